@@ -1,10 +1,47 @@
-abstract class ASTNode { }
+import java.util.List;
+
+abstract class ASTNode {
+    ValueType valueType = ValueType.UNKNOWN; // set by the TypeAnalyzer
+    int position = -1; // source offset of a statement's first token or an operator, set by the Parser
+}
 
 class LiteralNode extends ASTNode {
     String value;
+    // Parsed once from the ConstantPool entry; constant is null when the literal is invalid.
+    int constantIndex = -1;
+    Object constant;
+    int intValue;
+    double doubleValue;
+    boolean booleanValue;
 
     LiteralNode(String value) {
         this.value = value;
+        bind(ConstantPool.parseOrNull(value));
+    }
+
+    LiteralNode(String value, ConstantPool pool) {
+        this.value = value;
+        this.constantIndex = pool.add(value);
+        bind(pool.value(constantIndex));
+    }
+
+    /** A literal computed by the Optimizer rather than spelled in the source. */
+    static LiteralNode folded(Object constant) {
+        LiteralNode literal = new LiteralNode(String.valueOf(constant));
+        literal.bind(constant);
+        return literal;
+    }
+
+    private void bind(Object constant) {
+        this.constant = constant;
+        this.valueType = ValueType.of(constant);
+        if (constant instanceof Integer) {
+            intValue = (Integer) constant;
+        } else if (constant instanceof Double) {
+            doubleValue = (Double) constant;
+        } else if (constant instanceof Boolean) {
+            booleanValue = (Boolean) constant;
+        }
     }
 
     @Override
@@ -32,3 +69,87 @@ class BinaryOperationNode extends ASTNode {
         this.right = right;
     }
 }
+
+/** A ro or dna, which the Resolver splits out so every backend evaluates the right operand only when needed. */
+class LogicalNode extends BinaryOperationNode {
+    LogicalNode(BinaryOperationNode node) {
+        super(node.left, node.operator, node.right);
+        this.position = node.position;
+    }
+}
+
+/** A <, >, <=, >=, == or != comparison, split out by the Resolver. */
+class ComparisonNode extends BinaryOperationNode {
+    // Set by the TypeAnalyzer when both operands are typed: INT for two ints, DOUBLE when either side is a
+    // double and the other is promoted to one, BOOLEAN for two booleans; UNKNOWN compares boxed values.
+    ValueType operandType = ValueType.UNKNOWN;
+
+    ComparisonNode(BinaryOperationNode node) {
+        super(node.left, node.operator, node.right);
+        this.position = node.position;
+    }
+}
+
+class BlockNode extends ASTNode {
+    List<ASTNode> statements;
+
+    BlockNode(List<ASTNode> statements) {
+        this.statements = statements;
+    }
+}
+
+class VarDeclarationNode extends ASTNode {
+    Token type;
+    String name;
+    ASTNode initializer;
+    int slot = -1; // assigned by the Resolver
+
+    VarDeclarationNode(Token type, String name, ASTNode initializer) {
+        this.type = type;
+        this.name = name;
+        this.initializer = initializer;
+    }
+}
+
+class PrintNode extends ASTNode {
+    ASTNode expression;
+
+    PrintNode(ASTNode expression) {
+        this.expression = expression;
+    }
+}
+
+class IfNode extends ASTNode {
+    ASTNode condition;
+    BlockNode thenBranch;
+    BlockNode elseBranch; // null when there is no 'esle'
+
+    IfNode(ASTNode condition, BlockNode thenBranch, BlockNode elseBranch) {
+        this.condition = condition;
+        this.thenBranch = thenBranch;
+        this.elseBranch = elseBranch;
+    }
+}
+
+class LoopNode extends ASTNode {
+    ASTNode iterations;
+    BlockNode body;
+
+    LoopNode(ASTNode iterations, BlockNode body) {
+        this.iterations = iterations;
+        this.body = body;
+    }
+}
+
+/** A variable read that the Resolver has bound to a frame slot. */
+class SlotNode extends ASTNode {
+    String name;
+    int slot;
+    boolean mayBeUndefined; // only declared on some paths, so the read must check the slot
+
+    SlotNode(String name, int slot, boolean mayBeUndefined) {
+        this.name = name;
+        this.slot = slot;
+        this.mayBeUndefined = mayBeUndefined;
+    }
+}
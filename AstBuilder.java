@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds whatever the Parser recognizes. Every node is named by an int handle, and every handle is passed to
+ * exactly one later call that makes it a child, so the Parser never holds a node itself and one grammar
+ * builds both the object tree and the FlatAst. Children always come before their parent, and a parent
+ * consumes the newest handles that are not yet children.
+ */
+interface AstBuilder {
+    int literal(String text);
+
+    int variable(String name);
+
+    /** operatorStart is the source offset of the operator, as for every position below. */
+    int binary(int left, Token operator, int right, int operatorStart);
+
+    int declaration(Token type, String name, int initializer, int start);
+
+    int print(int expression, int start);
+
+    /** elseBranch is -1 when there is no esle. */
+    int ifStatement(int condition, int thenBranch, int elseBranch, int start);
+
+    int loop(int iterations, int body, int start);
+
+    int block(int[] statements, int count);
+}
+
+/**
+ * Builds the ASTNode tree. A handle is a position on a stack of nodes that are not yet children; building a
+ * parent pops its children and pushes the parent in place of the first.
+ */
+class TreeBuilder implements AstBuilder {
+    private final ConstantPool constants;
+    private ASTNode[] stack = new ASTNode[64];
+    private int top = 0;
+
+    TreeBuilder(ConstantPool constants) {
+        this.constants = constants;
+    }
+
+    /** Removes a finished node from the stack. */
+    ASTNode take(int handle) {
+        ASTNode node = stack[handle];
+        Arrays.fill(stack, handle, top, null);
+        top = handle;
+        return node;
+    }
+
+    @Override
+    public int literal(String text) {
+        return push(new LiteralNode(text, constants), top);
+    }
+
+    @Override
+    public int variable(String name) {
+        return push(new VariableNode(name), top);
+    }
+
+    @Override
+    public int binary(int left, Token operator, int right, int operatorStart) {
+        return push(at(operatorStart, new BinaryOperationNode(stack[left], operator, stack[right])), left);
+    }
+
+    @Override
+    public int declaration(Token type, String name, int initializer, int start) {
+        return push(at(start, new VarDeclarationNode(type, name, stack[initializer])), initializer);
+    }
+
+    @Override
+    public int print(int expression, int start) {
+        return push(at(start, new PrintNode(stack[expression])), expression);
+    }
+
+    @Override
+    public int ifStatement(int condition, int thenBranch, int elseBranch, int start) {
+        BlockNode elseBlock = elseBranch < 0 ? null : (BlockNode) stack[elseBranch];
+        return push(at(start, new IfNode(stack[condition], (BlockNode) stack[thenBranch], elseBlock)), condition);
+    }
+
+    @Override
+    public int loop(int iterations, int body, int start) {
+        return push(at(start, new LoopNode(stack[iterations], (BlockNode) stack[body])), iterations);
+    }
+
+    @Override
+    public int block(int[] statements, int count) {
+        List<ASTNode> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(stack[statements[i]]);
+        }
+        return push(new BlockNode(nodes), count == 0 ? top : statements[0]);
+    }
+
+    // Replaces everything from handle up with node.
+    private int push(ASTNode node, int handle) {
+        if (handle == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        Arrays.fill(stack, handle, top, null);
+        stack[handle] = node;
+        top = handle + 1;
+        return handle;
+    }
+
+    private static ASTNode at(int position, ASTNode node) {
+        node.position = position;
+        return node;
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact binary form of a parsed program, as stored by the ProgramCache. Nodes are written depth first as a
+ * one-byte tag followed by their fields; statements and operators also keep their source offset. Token types
+ * are stored by ordinal, counts as variable-length ints, and each distinct name or literal is spelled out
+ * once and referred to by index after that.
+ *
+ * Every entry starts with a header holding FORMAT_VERSION and a fingerprint of Token.Type and the encoded node
+ * classes' fields, so an entry written by a build with a different token set or AST does not decode.
+ */
+class AstCodec {
+    /** Bump when the encoding changes in a way the fingerprint does not see. */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x476F6F66; // "Goof"
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private static final int BLOCK = 0;
+    private static final int DECLARATION = 1;
+    private static final int PRINT = 2;
+    private static final int IF = 3;
+    private static final int LOOP = 4;
+    private static final int LITERAL = 5;
+    private static final int VARIABLE = 6;
+    private static final int BINARY = 7;
+
+    private static final int FINGERPRINT = fingerprint(BlockNode.class, VarDeclarationNode.class, PrintNode.class,
+            IfNode.class, LoopNode.class, LiteralNode.class, VariableNode.class, BinaryOperationNode.class);
+
+    // Strings seen so far: indices when encoding, strings when decoding.
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final ConstantPool constants = new ConstantPool();
+
+    private AstCodec() {
+    }
+
+    /** Encodes a program straight from the Parser, before the Resolver has rewritten it. */
+    static byte[] encode(BlockNode program) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(FINGERPRINT);
+            new AstCodec().write(out, program);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a ByteArrayOutputStream does not throw
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an entry into a fresh tree, as the Parser would have built it, with its own ConstantPool.
+     * Returns null if the bytes are not a complete entry of this format.
+     */
+    static BlockNode decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != FINGERPRINT) {
+                return null;
+            }
+            ASTNode program = new AstCodec().read(in);
+            if (!(program instanceof BlockNode) || in.available() != 0) {
+                return null;
+            }
+            return (BlockNode) program;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void write(DataOutputStream out, ASTNode node) throws IOException {
+        if (node instanceof BlockNode) {
+            List<ASTNode> statements = ((BlockNode) node).statements;
+            out.writeByte(BLOCK);
+            writeCount(out, statements.size());
+            for (ASTNode statement : statements) {
+                write(out, statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            out.writeByte(DECLARATION);
+            writeCount(out, node.position + 1);
+            writeToken(out, declaration.type);
+            writeString(out, declaration.name);
+            write(out, declaration.initializer);
+        } else if (node instanceof PrintNode) {
+            out.writeByte(PRINT);
+            writeCount(out, node.position + 1);
+            write(out, ((PrintNode) node).expression);
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            out.writeByte(IF);
+            writeCount(out, node.position + 1);
+            write(out, ifNode.condition);
+            write(out, ifNode.thenBranch);
+            out.writeBoolean(ifNode.elseBranch != null);
+            if (ifNode.elseBranch != null) {
+                write(out, ifNode.elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            out.writeByte(LOOP);
+            writeCount(out, node.position + 1);
+            write(out, loop.iterations);
+            write(out, loop.body);
+        } else if (node instanceof LiteralNode) {
+            out.writeByte(LITERAL);
+            writeString(out, ((LiteralNode) node).value);
+        } else if (node instanceof VariableNode) {
+            out.writeByte(VARIABLE);
+            writeString(out, ((VariableNode) node).name);
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode operation = (BinaryOperationNode) node;
+            out.writeByte(BINARY);
+            writeCount(out, node.position + 1);
+            writeToken(out, operation.operator);
+            write(out, operation.left);
+            write(out, operation.right);
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + node.getClass().getSimpleName());
+        }
+    }
+
+    private ASTNode read(DataInputStream in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case BLOCK: {
+                int count = readCount(in);
+                List<ASTNode> statements = new ArrayList<>(Math.min(count, 1024));
+                for (int i = 0; i < count; i++) {
+                    statements.add(read(in));
+                }
+                return new BlockNode(statements);
+            }
+            case DECLARATION: {
+                int position = readCount(in) - 1;
+                Token type = readToken(in);
+                String name = readString(in);
+                return at(position, new VarDeclarationNode(type, name, read(in)));
+            }
+            case PRINT: {
+                int position = readCount(in) - 1;
+                return at(position, new PrintNode(read(in)));
+            }
+            case IF: {
+                int position = readCount(in) - 1;
+                ASTNode condition = read(in);
+                BlockNode thenBranch = (BlockNode) read(in);
+                BlockNode elseBranch = in.readBoolean() ? (BlockNode) read(in) : null;
+                return at(position, new IfNode(condition, thenBranch, elseBranch));
+            }
+            case LOOP: {
+                int position = readCount(in) - 1;
+                ASTNode iterations = read(in);
+                return at(position, new LoopNode(iterations, (BlockNode) read(in)));
+            }
+            case LITERAL:
+                return new LiteralNode(readString(in), constants);
+            case VARIABLE:
+                return new VariableNode(readString(in));
+            case BINARY: {
+                int position = readCount(in) - 1;
+                Token operator = readToken(in);
+                ASTNode left = read(in);
+                return at(position, new BinaryOperationNode(left, operator, read(in)));
+            }
+            default:
+                throw new IOException("Unknown node tag " + tag);
+        }
+    }
+
+    private static ASTNode at(int position, ASTNode node) {
+        node.position = position;
+        return node;
+    }
+
+    // Keywords and symbols decode to the same shared Token instances the Parser hands out.
+    private void writeToken(DataOutputStream out, Token token) throws IOException {
+        out.writeByte(token.type.ordinal());
+        if (TokenBuffer.fixedToken(token.type) == null) {
+            writeString(out, token.value);
+        }
+    }
+
+    private Token readToken(DataInputStream in) throws IOException {
+        Token.Type type = TYPES[in.readUnsignedByte()];
+        Token fixed = TokenBuffer.fixedToken(type);
+        return fixed != null ? fixed : new Token(type, readString(in));
+    }
+
+    private void writeString(DataOutputStream out, String text) throws IOException {
+        Integer index = indices.get(text);
+        if (index != null) {
+            writeCount(out, index + 1);
+            return;
+        }
+        indices.put(text, indices.size());
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeCount(out, 0);
+        writeCount(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int index = readCount(in);
+        if (index > 0) {
+            return strings.get(index - 1);
+        }
+        int length = readCount(in);
+        if (length > in.available()) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(text);
+        return text;
+    }
+
+    // Seven bits per byte, low bits first; the high bit marks that another byte follows.
+    private static void writeCount(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("Bad count");
+    }
+
+    // Token types are written by ordinal and nodes field by field, so renaming, reordering or adding either
+    // changes the fingerprint.
+    private static int fingerprint(Class<?>... nodeClasses) {
+        StringBuilder shape = new StringBuilder();
+        for (Token.Type type : TYPES) {
+            shape.append(type.name()).append(',');
+        }
+        for (Class<?> nodeClass : nodeClasses) {
+            shape.append(';').append(nodeClass.getName());
+            List<String> fields = new ArrayList<>();
+            for (Class<?> c = nodeClass; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        fields.add(field.getName() + ':' + field.getType().getName());
+                    }
+                }
+            }
+            String[] sorted = fields.toArray(new String[0]);
+            Arrays.sort(sorted);
+            shape.append(String.join(",", sorted));
+        }
+        return shape.toString().hashCode();
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles and runs many scripts in one JVM on a work-stealing pool (--batch). Every script gets its own
+ * lexer, parser, resolver and interpreter state and its own captured output. Results are written in the
+ * order the scripts were given, each under a "==> file <==" header, whatever order they finish in.
+ */
+class BatchRunner {
+    private final GoofyAhhCompiler compiler;
+    private final int threads;
+
+    private static final class Result {
+        final byte[] output;
+        final byte[] errors;
+
+        Result(byte[] output, byte[] errors) {
+            this.output = output;
+            this.errors = errors;
+        }
+    }
+
+    BatchRunner(GoofyAhhCompiler compiler, int threads) {
+        this.compiler = compiler;
+        this.threads = threads;
+    }
+
+    void run(List<String> arguments) {
+        List<String> fileNames = new ArrayList<>();
+        for (String argument : arguments) {
+            try {
+                fileNames.addAll(expand(argument));
+            } catch (IOException e) {
+                System.err.println("Error reading directory: " + e.getMessage());
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int withDiagnostics = 0;
+        try {
+            List<Future<Result>> results = new ArrayList<>(fileNames.size());
+            for (String fileName : fileNames) {
+                results.add(pool.submit(() -> runOne(fileName)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Result result;
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException e) {
+                    // Errors other than RuntimeExceptions (e.g. a StackOverflowError) end only their own script.
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    result = new Result(new byte[0],
+                            ("Internal error: " + cause + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                System.out.println("==> " + fileNames.get(i) + " <==");
+                System.out.write(result.output, 0, result.output.length);
+                System.out.flush();
+                if (result.errors.length > 0) {
+                    withDiagnostics++;
+                    for (String line : new String(result.errors, StandardCharsets.UTF_8).split("\\R")) {
+                        System.err.println(fileNames.get(i) + ": " + line);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        System.err.printf("Batch: %d scripts, %d with errors or diagnostics, %d threads, %d ms%n",
+                fileNames.size(), withDiagnostics, threads, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Result runOne(String fileName) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        OutputSink out = new OutputSink(new PrintStream(output), OutputSink.FlushPolicy.SIZE);
+        compiler.run(fileName, out, new PrintStream(errors, true, StandardCharsets.UTF_8));
+        out.flush();
+        return new Result(output.toByteArray(), errors.toByteArray());
+    }
+
+    /** A directory stands for its .txt files in name order; anything else is a script. */
+    private static List<String> expand(String argument) throws IOException {
+        Path path = Paths.get(argument);
+        if (!Files.isDirectory(path)) {
+            return List.of(argument);
+        }
+        try (Stream<Path> entries = Files.list(path)) {
+            return entries.filter(entry -> entry.getFileName().toString().endsWith(".txt") && Files.isRegularFile(entry))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
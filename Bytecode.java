@@ -0,0 +1,41 @@
+import java.util.List;
+
+/** A program lowered by the BytecodeCompiler, ready to run on the VirtualMachine. */
+class Bytecode {
+    final int[] code;
+    final Object[] constants;
+    final List<String> slotNames; // user variables occupy the first slotNames.size() locals
+    final int localCount;         // user slots plus hidden rof counters
+    final int maxStack;
+
+    Bytecode(int[] code, Object[] constants, List<String> slotNames, int localCount, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.slotNames = slotNames;
+        this.localCount = localCount;
+        this.maxStack = maxStack;
+    }
+
+    /** One instruction per line, for debugging the compiler. */
+    String disassemble() {
+        StringBuilder out = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            out.append(String.format("%5d  %-14s", pc, Opcode.NAMES[opcode]));
+            for (int i = 1; i <= Opcode.operandCount(opcode); i++) {
+                out.append(' ').append(code[pc + i]);
+            }
+            if (opcode == Opcode.ACONST || opcode == Opcode.BAD_LITERAL) {
+                out.append("  ; ").append(constants[code[pc + 1]]);
+            } else if (opcode == Opcode.ABINARY) {
+                out.append("  ; ").append(Token.Type.values()[code[pc + 1]]);
+            } else if (opcode >= Opcode.ILOAD && opcode <= Opcode.ASTORE && code[pc + 1] < slotNames.size()) {
+                out.append("  ; ").append(slotNames.get(code[pc + 1]));
+            }
+            out.append('\n');
+            pc += 1 + Opcode.operandCount(opcode);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Lowers a resolved and type-analyzed program into Bytecode for the VirtualMachine.
+ * Expressions the TypeAnalyzer typed compile to the unboxed I/D/Z instructions, everything else to boxed
+ * instructions with the Interpreter's semantics. ro and dna jump past their right operand when the left one
+ * decides the result. A rof loop keeps its remaining count in a hidden local and costs one LOOP and one JUMP
+ * per iteration.
+ */
+class BytecodeCompiler {
+    private final List<String> slotNames;
+    private final ValueType[] slotTypes;
+    private int[] code = new int[256];
+    private int size = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final HashMap<Object, Integer> constantIndices = new HashMap<>();
+    private int loopDepth = 0;
+    private int maxLoopDepth = 0;
+    private int stackDepth = 0;
+    private int maxStack = 0;
+
+    BytecodeCompiler(List<String> slotNames, ValueType[] slotTypes) {
+        this.slotNames = slotNames;
+        this.slotTypes = slotTypes;
+    }
+
+    public Bytecode compile(BlockNode program) {
+        compileStatement(program);
+        emit(Opcode.HALT);
+        return new Bytecode(Arrays.copyOf(code, size), constants.toArray(), slotNames,
+                slotNames.size() + maxLoopDepth, maxStack);
+    }
+
+    private void compileStatement(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                compileStatement(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            switch (declaration.valueType) {
+                case INT: compileTyped(declaration.initializer); emit(Opcode.ISTORE, declaration.slot); break;
+                case DOUBLE: compileTyped(declaration.initializer); emit(Opcode.DSTORE, declaration.slot); break;
+                case BOOLEAN: compileTyped(declaration.initializer); emit(Opcode.ZSTORE, declaration.slot); break;
+                default: compileBoxed(declaration.initializer); emit(Opcode.ASTORE, declaration.slot);
+            }
+            pop();
+        } else if (node instanceof PrintNode) {
+            ASTNode expression = ((PrintNode) node).expression;
+            switch (expression.valueType) {
+                case INT: compileTyped(expression); emit(Opcode.PRINT_I); break;
+                case DOUBLE: compileTyped(expression); emit(Opcode.PRINT_D); break;
+                case BOOLEAN: compileTyped(expression); emit(Opcode.PRINT_Z); break;
+                default: compileBoxed(expression); emit(Opcode.PRINT_A);
+            }
+            pop();
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            if (ifNode.condition.valueType == ValueType.BOOLEAN) {
+                compileTyped(ifNode.condition);
+            } else {
+                compileBoxed(ifNode.condition);
+                emit(Opcode.ACONDITION);
+            }
+            int jumpToElse = emitJump(Opcode.JUMP_IF_FALSE);
+            pop();
+            compileStatement(ifNode.thenBranch);
+            if (ifNode.elseBranch != null) {
+                int jumpToEnd = emitJump(Opcode.JUMP);
+                patch(jumpToElse);
+                compileStatement(ifNode.elseBranch);
+                patch(jumpToEnd);
+            } else {
+                patch(jumpToElse);
+            }
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            if (loop.iterations.valueType == ValueType.INT) {
+                compileTyped(loop.iterations);
+            } else {
+                compileBoxed(loop.iterations);
+                emit(Opcode.AITERATIONS);
+            }
+            int counter = slotNames.size() + loopDepth;
+            emit(Opcode.ISTORE, counter);
+            pop();
+            loopDepth++;
+            maxLoopDepth = Math.max(maxLoopDepth, loopDepth);
+            int head = size;
+            emit(Opcode.LOOP, counter, 0);
+            int exit = size - 1;
+            compileStatement(loop.body);
+            emit(Opcode.JUMP, head);
+            code[exit] = size;
+            loopDepth--;
+        } else {
+            throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    /** Leaves the unboxed value of a node the TypeAnalyzer typed as INT, DOUBLE or BOOLEAN. */
+    private void compileTyped(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            LiteralNode literal = (LiteralNode) node;
+            switch (node.valueType) {
+                case INT: emit(Opcode.ICONST, literal.intValue); break;
+                case DOUBLE:
+                    long bits = Double.doubleToRawLongBits(literal.doubleValue);
+                    emit(Opcode.DCONST, (int) (bits >>> 32), (int) bits);
+                    break;
+                default: emit(Opcode.ZCONST, literal.booleanValue ? 1 : 0);
+            }
+            push();
+        } else if (node instanceof SlotNode) {
+            int slot = ((SlotNode) node).slot;
+            switch (slotTypes[slot]) {
+                case INT: emit(Opcode.ILOAD, slot); break;
+                case DOUBLE: emit(Opcode.DLOAD, slot); break;
+                default: emit(Opcode.ZLOAD, slot);
+            }
+            push();
+        } else if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            compileTyped(logical.left);
+            int end = emitJump(logical.operator.type == Token.Type.OR
+                    ? Opcode.JUMP_IF_TRUE_OR_POP : Opcode.JUMP_IF_FALSE_OR_POP);
+            pop();
+            compileTyped(logical.right);
+            patch(end);
+        } else if (node instanceof ComparisonNode) {
+            ComparisonNode comparison = (ComparisonNode) node;
+            Token.Type operator = comparison.operator.type;
+            if (comparison.operandType == ValueType.DOUBLE) {
+                compileAsDouble(comparison.left);
+                compileAsDouble(comparison.right);
+                emit(doubleComparisonOpcode(operator));
+            } else {
+                compileTyped(comparison.left);
+                compileTyped(comparison.right);
+                emit(comparison.operandType == ValueType.INT ? intComparisonOpcode(operator) : booleanOpcode(operator));
+            }
+            pop();
+        } else {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            Token.Type operator = binaryNode.operator.type;
+            if (node.valueType == ValueType.DOUBLE) {
+                if (operator == Token.Type.PLUS && binaryNode.left.valueType == ValueType.INT
+                        && binaryNode.right.valueType == ValueType.INT) {
+                    compileTyped(binaryNode.left);
+                    compileTyped(binaryNode.right);
+                    emit(Opcode.IADD_D);
+                } else {
+                    compileAsDouble(binaryNode.left);
+                    compileAsDouble(binaryNode.right);
+                    emit(doubleOpcode(operator));
+                }
+            } else {
+                compileTyped(binaryNode.left);
+                compileTyped(binaryNode.right);
+                emit(intOpcode(operator));
+            }
+            pop();
+        }
+    }
+
+    private void compileAsDouble(ASTNode node) {
+        compileTyped(node);
+        if (node.valueType == ValueType.INT) {
+            emit(Opcode.I2D);
+        }
+    }
+
+    /** Leaves the boxed value of any node. */
+    private void compileBoxed(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            LiteralNode literal = (LiteralNode) node;
+            if (literal.constant != null) {
+                emit(Opcode.ACONST, constant(literal.constant));
+            } else {
+                emit(Opcode.BAD_LITERAL, constant(literal.value));
+            }
+            push();
+            return;
+        }
+        switch (node.valueType) {
+            case INT: compileTyped(node); emit(Opcode.BOX_I); return;
+            case DOUBLE: compileTyped(node); emit(Opcode.BOX_D); return;
+            case BOOLEAN: compileTyped(node); emit(Opcode.BOX_Z); return;
+        }
+        if (node instanceof SlotNode) {
+            SlotNode slotNode = (SlotNode) node;
+            emit(slotNode.mayBeUndefined ? Opcode.ALOAD_CHECKED : Opcode.ALOAD, slotNode.slot);
+            push();
+        } else if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            compileBoxed(logical.left);
+            int end = emitJump(logical.operator.type == Token.Type.OR ? Opcode.AJUMP_IF_TRUE : Opcode.AJUMP_IF_FALSE);
+            compileBoxed(logical.right);
+            emit(Opcode.ABINARY, logical.operator.type.ordinal());
+            pop();
+            patch(end);
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            compileBoxed(binaryNode.left);
+            compileBoxed(binaryNode.right);
+            emit(Opcode.ABINARY, binaryNode.operator.type.ordinal());
+            pop();
+        } else if (node instanceof VariableNode) {
+            throw new RuntimeException("Unresolved variable: " + ((VariableNode) node).name);
+        } else {
+            throw new RuntimeException("Unknown ASTNode type");
+        }
+    }
+
+    private static int intOpcode(Token.Type operator) {
+        switch (operator) {
+            case MINUS: return Opcode.ISUB;
+            case STAR: return Opcode.IMUL;
+            case SLASH: return Opcode.IDIV;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    private static int doubleOpcode(Token.Type operator) {
+        switch (operator) {
+            case PLUS: return Opcode.DADD;
+            case MINUS: return Opcode.DSUB;
+            case STAR: return Opcode.DMUL;
+            case SLASH: return Opcode.DDIV;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    private static int booleanOpcode(Token.Type operator) {
+        switch (operator) {
+            case EQEQ: return Opcode.ZEQ;
+            case NOTEQ: return Opcode.ZNE;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    private static int intComparisonOpcode(Token.Type operator) {
+        switch (operator) {
+            case LESS: return Opcode.ILT;
+            case GREATER: return Opcode.IGT;
+            case LESSEQ: return Opcode.ILE;
+            case GREATEREQ: return Opcode.IGE;
+            case EQEQ: return Opcode.IEQ;
+            case NOTEQ: return Opcode.INE;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    private static int doubleComparisonOpcode(Token.Type operator) {
+        switch (operator) {
+            case LESS: return Opcode.DLT;
+            case GREATER: return Opcode.DGT;
+            case LESSEQ: return Opcode.DLE;
+            case GREATEREQ: return Opcode.DGE;
+            case EQEQ: return Opcode.DEQ;
+            case NOTEQ: return Opcode.DNE;
+            default: throw new RuntimeException("Unsupported operator: " + operator);
+        }
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndices.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndices.put(value, index);
+        }
+        return index;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + words.length));
+        }
+        for (int word : words) {
+            code[size++] = word;
+        }
+    }
+
+    /** Emits a jump with a placeholder target and returns the target's position for patch. */
+    private int emitJump(int opcode) {
+        emit(opcode, 0);
+        return size - 1;
+    }
+
+    private void patch(int targetPosition) {
+        code[targetPosition] = size;
+    }
+
+    private void push() {
+        stackDepth++;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void pop() {
+        stackDepth--;
+    }
+}
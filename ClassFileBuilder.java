@@ -0,0 +1,269 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Minimal JVM class file writer for the JvmCompiler. It writes class file version 49, which the JVM still
+ * verifies by type inference, so no StackMapTable has to be computed.
+ */
+class ClassFileBuilder {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String value) {
+        return add("U" + value, 1, out -> { out.writeByte(1); out.writeUTF(value); });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return add("C" + internalName, 1, out -> { out.writeByte(7); out.writeShort(name); });
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        return add("S" + value, 1, out -> { out.writeByte(8); out.writeShort(utf8); });
+    }
+
+    int integer(int value) {
+        return add("I" + value, 1, out -> { out.writeByte(3); out.writeInt(value); });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return add("D" + bits, 2, out -> { out.writeByte(6); out.writeLong(bits); });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = add("N" + name + ":" + descriptor, 1,
+                out -> { out.writeByte(12); out.writeShort(nameIndex); out.writeShort(descriptorIndex); });
+        return add(tag + owner + "." + name + ":" + descriptor, 1,
+                out -> { out.writeByte(tag); out.writeShort(ownerIndex); out.writeShort(nameAndType); });
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int add(String key, int slots, EntryWriter writer) {
+        Integer index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        index = poolCount;
+        poolCount += slots;
+        if (poolCount > 0xFFFF) {
+            throw new RuntimeException("Program too large for a class file: constant pool overflow");
+        }
+        poolIndices.put(key, index);
+        return index;
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            byte[] body = code.toBytes();
+            out.writeInt(body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray(String className, String superName) {
+        int thisIndex = classRef(className);
+        int superIndex = classRef(superName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** A forward or backward branch target inside one Code body. */
+    static class Label {
+        private int position = -1;
+        private final List<int[]> fixups = new ArrayList<>(); // {instruction start, offset position}
+    }
+
+    /** Bytecode of one method, tracking the operand stack depth in words to compute max_stack. */
+    static class Code {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+        private final List<int[]> handlers = new ArrayList<>(); // {start, end, handler, catch type}
+
+        int position() {
+            return size;
+        }
+
+        void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjustStack(stackDelta);
+        }
+
+        void op1(int opcode, int operand, int stackDelta) {
+            u1(opcode);
+            u1(operand);
+            adjustStack(stackDelta);
+        }
+
+        void op2(int opcode, int operand, int stackDelta) {
+            u1(opcode);
+            u2(operand);
+            adjustStack(stackDelta);
+        }
+
+        void iinc(int local, int delta) {
+            if (local <= 0xFF && delta >= Byte.MIN_VALUE && delta <= Byte.MAX_VALUE) {
+                u1(0x84);
+                u1(local);
+                u1(delta);
+            } else {
+                u1(0xc4); // wide
+                u1(0x84);
+                u2(local);
+                u2(delta);
+            }
+        }
+
+        void branch(int opcode, Label target, int stackDelta) {
+            int start = size;
+            u1(opcode);
+            if (target.position >= 0) {
+                u2(offset(start, target.position));
+            } else {
+                target.fixups.add(new int[]{start, size});
+                u2(0);
+            }
+            adjustStack(stackDelta);
+        }
+
+        void place(Label label) {
+            label.position = size;
+            for (int[] fixup : label.fixups) {
+                int offset = offset(fixup[0], size);
+                bytes[fixup[1]] = (byte) (offset >> 8);
+                bytes[fixup[1] + 1] = (byte) offset;
+            }
+            label.fixups.clear();
+        }
+
+        /** Sets the tracked stack depth where flow resumes from a branch or an exception handler. */
+        void setStack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        int stack() {
+            return stack;
+        }
+
+        void useLocals(int count) {
+            maxLocals = Math.max(maxLocals, count);
+        }
+
+        void handler(int start, int end, int handler, int catchType) {
+            handlers.add(new int[]{start, end, handler, catchType});
+        }
+
+        private int offset(int from, int to) {
+            int offset = to - from;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new RuntimeException("Program too large for a class file: branch offset out of range");
+            }
+            return offset;
+        }
+
+        private void adjustStack(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private byte[] toBytes() throws IOException {
+            if (size > 0xFFFF) {
+                throw new RuntimeException("Program too large for a class file: method exceeds 64KB");
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(size);
+            out.write(bytes, 0, size);
+            out.writeShort(handlers.size());
+            for (int[] handler : handlers) {
+                for (int value : handler) {
+                    out.writeShort(value);
+                }
+            }
+            out.writeShort(0); // attributes
+            return body.toByteArray();
+        }
+    }
+}
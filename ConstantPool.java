@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Literal values parsed once at parse time. Every distinct literal spelling gets one entry, and all
+ * LiteralNodes that spell it share the entry's value.
+ */
+class ConstantPool {
+    private final HashMap<String, Integer> indices = new HashMap<>();
+    private final List<String> literals = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+
+    /** Index of the literal's entry, adding it if needed. */
+    int add(String literal) {
+        Integer index = indices.get(literal);
+        if (index == null) {
+            index = values.size();
+            indices.put(literal, index);
+            literals.add(literal);
+            values.add(parseOrNull(literal));
+        }
+        return index;
+    }
+
+    /** The parsed value, or null if the literal is invalid. */
+    Object value(int index) {
+        return values.get(index);
+    }
+
+    String literal(int index) {
+        return literals.get(index);
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    /** Parses a literal the way the language defines it: double, boolean, int, then single character. */
+    static Object parse(String value) {
+        int dot = value.indexOf('.');
+        if (dot > 0 && dot < value.length() - 1 && allDigits(value, 0, dot) && allDigits(value, dot + 1, value.length())) {
+            return Double.parseDouble(value);
+        } else if (value.equals("eurt")) {
+            return true;
+        } else if (value.equals("eslaf")) {
+            return false;
+        } else if (!value.isEmpty() && allDigits(value, 0, value.length())) {
+            return Integer.parseInt(value);
+        } else if (value.length() == 1) {
+            return value.charAt(0);
+        }
+        throw new RuntimeException("Invalid literal: " + value);
+    }
+
+    /** Like parse, but returns null for an invalid literal so the error surfaces when it is evaluated, as before. */
+    static Object parseOrNull(String value) {
+        try {
+            return parse(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean allDigits(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
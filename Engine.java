@@ -0,0 +1,42 @@
+import java.util.Arrays;
+import java.util.List;
+
+/** Compiles scripts for goofyahh.Engine, which documents the API; EngineBridge forwards its calls here. */
+final class Engine {
+    private final goofyahh.Engine.Backend backend;
+    private final boolean optimize;
+
+    Engine(goofyahh.Engine.Backend backend, boolean optimize) {
+        this.backend = backend;
+        this.optimize = optimize;
+    }
+
+    Program compile(String source, String... parameters) {
+        List<String> names = List.of(parameters);
+        if (names.stream().distinct().count() != names.size()) {
+            throw new IllegalArgumentException("Duplicate parameter in " + Arrays.toString(parameters));
+        }
+        BlockNode program = GoofyAhhCompiler.parse(source, Lexer.Mode.SCANNER);
+
+        Resolver resolver = new Resolver();
+        for (String name : names) {
+            resolver.declare(name);
+        }
+        try {
+            resolver.resolve(program);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Resolve error: " + e.getMessage(), e);
+        }
+        if (optimize) {
+            new Optimizer().optimize(program, names.size());
+            new LoopOptimizer(resolver.slotNames()).optimize(program, names.size());
+        }
+
+        List<String> slotNames = List.copyOf(resolver.slotNames());
+        ValueType[] slotTypes = new TypeAnalyzer().analyze(program, slotNames.size(), names.size());
+        if (backend == goofyahh.Engine.Backend.VM) {
+            return new Program(names, new BytecodeCompiler(slotNames, slotTypes).compile(program));
+        }
+        return new Program(names, slotNames, slotTypes, program);
+    }
+}
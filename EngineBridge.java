@@ -0,0 +1,8 @@
+/** Gives goofyahh.Engine, which lives in a named package, access to the Engine in the unnamed one. */
+public class EngineBridge implements goofyahh.Engine.Compiler {
+    @Override
+    public goofyahh.Program compile(String source, goofyahh.Engine.Backend backend, boolean optimize,
+                                    String... parameters) {
+        return new Engine(backend, optimize).compile(source, parameters);
+    }
+}
@@ -1,12 +1,34 @@
 import java.nio.file.*;
 import java.io.IOException;
+import java.io.PrintStream;
 
 public class FileReader {
     public static String readFile(String fileName) {
+        return readFile(fileName, System.err);
+    }
+
+    public static String readFile(String fileName, PrintStream err) {
         try {
             return Files.readString(Paths.get(fileName));
         } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
+            err.println("Error reading file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps a regular file instead of reading it, for lexing straight from the page cache. Anything else
+     * (pipes, devices, missing files) is read into a String as before.
+     */
+    public static CharSequence mapFile(String fileName, PrintStream err) {
+        Path path = Paths.get(fileName);
+        if (!Files.isRegularFile(path)) {
+            return readFile(fileName, err);
+        }
+        try {
+            return MappedSource.map(path);
+        } catch (IOException e) {
+            err.println("Error reading file: " + e.getMessage());
             return null;
         }
     }
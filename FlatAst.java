@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A parsed program stored in one int array instead of a tree of objects, as built by Parser.parseFlat and
+ * run by the FlatInterpreter. Every node takes NODE_SIZE consecutive ints (opcode, left, right, operand) and
+ * is referred to by the offset of its first int. The Parser adds nodes children first, so the nodes of an
+ * expression are contiguous and its root comes last.
+ *
+ * Names get their slot when they are first parsed, since every scope is global; resolve() then reports the
+ * reads of names that are not declared before them, the way the Resolver does for the tree.
+ */
+class FlatAst implements AstBuilder {
+    static final int NODE_SIZE = 4;
+    static final int OPCODE = 0;
+    static final int LEFT = 1;
+    static final int RIGHT = 2;
+    static final int OPERAND = 3;
+
+    static final int LITERAL = 0;     // operand: ConstantPool index
+    static final int VARIABLE = 1;    // operand: slot
+    static final int BINARY = 2;      // left, right; operand: Token.Type ordinal of the operator
+    static final int LOGICAL = 3;     // ro or dna, laid out like BINARY
+    static final int DECLARATION = 4; // left: initializer; right: Token.Type ordinal of the keyword; operand: slot
+    static final int PRINT = 5;       // left: expression
+    static final int IF = 6;          // left: condition; right: then block; operand: else block or -1
+    static final int LOOP = 7;        // left: iterations; right: body
+    static final int BLOCK = 8;       // left: index of the first statement in statements; right: count
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    final ConstantPool constants;
+    int[] nodes = new int[256 * NODE_SIZE];
+    int size = 0; // ints of nodes in use
+    int[] statements = new int[64]; // the statements of every block, one block after another
+    int statementCount = 0;
+    int program = -1; // the top-level block, set by the Parser
+
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private final List<String> slotNames = new ArrayList<>();
+
+    FlatAst(ConstantPool constants) {
+        this.constants = constants;
+    }
+
+    /** Variable names indexed by slot; its size is the frame size. */
+    List<String> slotNames() {
+        return slotNames;
+    }
+
+    /** Number of nodes. */
+    int nodeCount() {
+        return size / NODE_SIZE;
+    }
+
+    static Token.Type operator(int ordinal) {
+        return TYPES[ordinal];
+    }
+
+    @Override
+    public int literal(String text) {
+        return add(LITERAL, 0, 0, constants.add(text));
+    }
+
+    @Override
+    public int variable(String name) {
+        return add(VARIABLE, 0, 0, slotFor(name));
+    }
+
+    @Override
+    public int binary(int left, Token operator, int right, int operatorStart) {
+        int opcode = operator.type == Token.Type.OR || operator.type == Token.Type.AND ? LOGICAL : BINARY;
+        return add(opcode, left, right, operator.type.ordinal());
+    }
+
+    @Override
+    public int declaration(Token type, String name, int initializer, int start) {
+        return add(DECLARATION, initializer, type.type.ordinal(), slotFor(name));
+    }
+
+    @Override
+    public int print(int expression, int start) {
+        return add(PRINT, expression, 0, 0);
+    }
+
+    @Override
+    public int ifStatement(int condition, int thenBranch, int elseBranch, int start) {
+        return add(IF, condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public int loop(int iterations, int body, int start) {
+        return add(LOOP, iterations, body, 0);
+    }
+
+    @Override
+    public int block(int[] statements, int count) {
+        int first = statementCount;
+        if (first + count > this.statements.length) {
+            this.statements = Arrays.copyOf(this.statements, Math.max(first + count, this.statements.length * 2));
+        }
+        System.arraycopy(statements, 0, this.statements, first, count);
+        statementCount += count;
+        return add(BLOCK, first, count, 0);
+    }
+
+    /** Drops the spare capacity of the arrays once the Parser is done. */
+    void trim() {
+        nodes = Arrays.copyOf(nodes, size);
+        statements = Arrays.copyOf(statements, statementCount);
+    }
+
+    private int slotFor(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slotNames.size();
+            slots.put(name, slot);
+            slotNames.add(name);
+        }
+        return slot;
+    }
+
+    private int add(int opcode, int left, int right, int operand) {
+        if (size + NODE_SIZE > nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        int node = size;
+        nodes[node + OPCODE] = opcode;
+        nodes[node + LEFT] = left;
+        nodes[node + RIGHT] = right;
+        nodes[node + OPERAND] = operand;
+        size += NODE_SIZE;
+        return node;
+    }
+
+    /** Throws "Undefined variable" for the first read, in program order, of a name not declared before it. */
+    void resolve() {
+        resolve(program, new BitSet());
+    }
+
+    private void resolve(int node, BitSet declared) {
+        switch (nodes[node + OPCODE]) {
+            case BLOCK:
+                for (int i = nodes[node + LEFT], end = i + nodes[node + RIGHT]; i < end; i++) {
+                    resolve(statements[i], declared);
+                }
+                break;
+            case DECLARATION:
+                resolveExpression(nodes[node + LEFT], declared);
+                declared.set(nodes[node + OPERAND]);
+                break;
+            case PRINT:
+                resolveExpression(nodes[node + LEFT], declared);
+                break;
+            case IF:
+                resolveExpression(nodes[node + LEFT], declared);
+                resolve(nodes[node + RIGHT], declared);
+                if (nodes[node + OPERAND] >= 0) {
+                    resolve(nodes[node + OPERAND], declared);
+                }
+                break;
+            case LOOP:
+                resolveExpression(nodes[node + LEFT], declared);
+                // A later iteration can read what an earlier one declared further down the body.
+                declareAll(nodes[node + RIGHT], declared);
+                resolve(nodes[node + RIGHT], declared);
+                break;
+            default:
+                throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    // The expression's nodes run from its leftmost operand to its root, so no walk of the tree is needed.
+    private void resolveExpression(int root, BitSet declared) {
+        int first = root;
+        while (nodes[first + OPCODE] == BINARY || nodes[first + OPCODE] == LOGICAL) {
+            first = nodes[first + LEFT];
+        }
+        for (int node = first; node <= root; node += NODE_SIZE) {
+            if (nodes[node + OPCODE] == VARIABLE && !declared.get(nodes[node + OPERAND])) {
+                throw new RuntimeException("Undefined variable: " + slotNames.get(nodes[node + OPERAND]));
+            }
+        }
+    }
+
+    private void declareAll(int node, BitSet declared) {
+        switch (nodes[node + OPCODE]) {
+            case BLOCK:
+                for (int i = nodes[node + LEFT], end = i + nodes[node + RIGHT]; i < end; i++) {
+                    declareAll(statements[i], declared);
+                }
+                break;
+            case DECLARATION:
+                declared.set(nodes[node + OPERAND]);
+                break;
+            case IF:
+                declareAll(nodes[node + RIGHT], declared);
+                if (nodes[node + OPERAND] >= 0) {
+                    declareAll(nodes[node + OPERAND], declared);
+                }
+                break;
+            case LOOP:
+                declareAll(nodes[node + RIGHT], declared);
+                break;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * Runs a resolved FlatAst with boxed values and the Interpreter's semantics. Expressions are walked with an
+ * explicit stack of pending operators and a stack of values instead of recursion, so no chain or nesting of
+ * operators is too deep to run; statements still recurse, as deep as their blocks nest.
+ */
+class FlatInterpreter {
+    // A pending operator is its offset with what is left to do in the low bits, which offsets leave free.
+    private static final int EVALUATE = 0;   // no operand evaluated yet
+    private static final int LEFT_DONE = 1;  // the left operand's value is on the value stack
+    private static final int RIGHT_DONE = 2; // both operand values are on the value stack
+    private static final int STATE_MASK = 3;
+
+    private final FlatAst ast;
+    private final int[] nodes;
+    private final Object[] constants; // by ConstantPool index; null for invalid literals
+    private final Object[] frame;
+    private final OutputSink out;
+    private int[] pending = new int[64];
+    private Object[] values = new Object[64];
+
+    FlatInterpreter(FlatAst ast, OutputSink out) {
+        this.ast = ast;
+        this.nodes = ast.nodes;
+        this.constants = new Object[ast.constants.size()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = ast.constants.value(i);
+        }
+        this.frame = new Object[ast.slotNames().size()];
+        this.out = out;
+    }
+
+    public void execute() {
+        execute(ast.program);
+    }
+
+    private void execute(int node) {
+        switch (nodes[node + FlatAst.OPCODE]) {
+            case FlatAst.BLOCK:
+                for (int i = nodes[node + FlatAst.LEFT], end = i + nodes[node + FlatAst.RIGHT]; i < end; i++) {
+                    execute(ast.statements[i]);
+                }
+                break;
+            case FlatAst.DECLARATION:
+                frame[nodes[node + FlatAst.OPERAND]] = evaluate(nodes[node + FlatAst.LEFT]);
+                break;
+            case FlatAst.PRINT:
+                out.println(evaluate(nodes[node + FlatAst.LEFT]));
+                break;
+            case FlatAst.IF:
+                Object condition = evaluate(nodes[node + FlatAst.LEFT]);
+                if (!(condition instanceof Boolean)) {
+                    throw new RuntimeException("Expected a boolean condition for 'fi'.");
+                }
+                if ((Boolean) condition) {
+                    execute(nodes[node + FlatAst.RIGHT]);
+                } else if (nodes[node + FlatAst.OPERAND] >= 0) {
+                    execute(nodes[node + FlatAst.OPERAND]);
+                }
+                break;
+            case FlatAst.LOOP:
+                Object iterations = evaluate(nodes[node + FlatAst.LEFT]);
+                if (!(iterations instanceof Integer)) {
+                    throw new RuntimeException("Expected an integer for 'rof' iterations.");
+                }
+                int body = nodes[node + FlatAst.RIGHT];
+                for (int i = 0, n = (Integer) iterations; i < n; i++) {
+                    execute(body);
+                }
+                break;
+            default:
+                throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    /**
+     * Evaluates the expression rooted at root; operands are evaluated left to right, as the Interpreter does.
+     * Only operators wait on the pending stack: an operand that is a literal or variable is read in place.
+     */
+    Object evaluate(int root) {
+        if (isLeaf(root)) {
+            return leaf(root);
+        }
+        int[] nodes = this.nodes;
+        int top = 0;      // pending operators
+        int valueTop = 0; // values
+        pending[top++] = root | EVALUATE;
+        try {
+            while (top > 0) {
+                int entry = pending[--top];
+                int node = entry & ~STATE_MASK;
+                int state = entry & STATE_MASK;
+                Token.Type operator = FlatAst.operator(nodes[node + FlatAst.OPERAND]);
+                if (top + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                if (state == EVALUATE) {
+                    int left = nodes[node + FlatAst.LEFT];
+                    if (!isLeaf(left)) {
+                        pending[top++] = node | LEFT_DONE;
+                        pending[top++] = left | EVALUATE;
+                        continue;
+                    }
+                    valueTop = push(leaf(left), valueTop);
+                }
+                if (state != RIGHT_DONE) {
+                    // A ro or dna whose left operand decides it leaves that operand as its value.
+                    if (nodes[node + FlatAst.OPCODE] == FlatAst.LOGICAL
+                            && Interpreter.decides(operator, values[valueTop - 1])) {
+                        continue;
+                    }
+                    int right = nodes[node + FlatAst.RIGHT];
+                    if (!isLeaf(right)) {
+                        pending[top++] = node | RIGHT_DONE;
+                        pending[top++] = right | EVALUATE;
+                        continue;
+                    }
+                    valueTop = push(leaf(right), valueTop);
+                }
+                Object right = values[--valueTop];
+                values[valueTop] = null;
+                Object left = values[--valueTop];
+                values[valueTop] = null;
+                valueTop = push(Interpreter.applyBinary(operator, left, right), valueTop);
+            }
+            return values[0];
+        } finally {
+            // Popped values are cleared as they go; this drops the result and what a failure left behind.
+            Arrays.fill(values, 0, valueTop, null);
+        }
+    }
+
+    private boolean isLeaf(int node) {
+        return nodes[node + FlatAst.OPCODE] == FlatAst.LITERAL || nodes[node + FlatAst.OPCODE] == FlatAst.VARIABLE;
+    }
+
+    private Object leaf(int node) {
+        int operand = nodes[node + FlatAst.OPERAND];
+        if (nodes[node + FlatAst.OPCODE] == FlatAst.LITERAL) {
+            Object constant = constants[operand];
+            return constant != null ? constant : ConstantPool.parse(ast.constants.literal(operand));
+        }
+        Object value = frame[operand];
+        if (value == null) {
+            throw new RuntimeException("Undefined variable: " + ast.slotNames().get(operand));
+        }
+        return value;
+    }
+
+    private int push(Object value, int valueTop) {
+        if (valueTop == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[valueTop] = value;
+        return valueTop + 1;
+    }
+}
@@ -1,32 +1,342 @@
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 public class GoofyAhhCompiler {
+    // Options shared by every file this compiler runs; they are not changed after main has parsed them.
+    private Lexer.Mode lexerMode = Lexer.Mode.SCANNER;
+    private boolean useVm = false;
+    private boolean disassemble = false;
+    private boolean useJvm = false;
+    private boolean emitClass = false;
+    private boolean optimize = false;
+    private boolean pipeline = false;
+    private boolean flat = false;
+    private ProgramCache cache = null;
+    private String profileFile = null; // collapsed stacks go here when profiling
+
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.err.println("Usage: java GoofyAhhCompiler <file.txt>");
+        GoofyAhhCompiler compiler = new GoofyAhhCompiler();
+        List<String> fileNames = new ArrayList<>();
+        OutputSink.FlushPolicy flushPolicy = OutputSink.defaultPolicy();
+        boolean batch = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.equals("--regex-lexer")) {
+                compiler.lexerMode = Lexer.Mode.REGEX;
+            } else if (arg.equals("--vm")) {
+                compiler.useVm = true;
+            } else if (arg.equals("--disassemble")) {
+                compiler.disassemble = true;
+            } else if (arg.equals("--jvm")) {
+                compiler.useJvm = true;
+            } else if (arg.equals("--emit-class")) {
+                compiler.emitClass = true;
+            } else if (arg.equals("-O")) {
+                compiler.optimize = true;
+            } else if (arg.equals("--pipeline")) {
+                compiler.pipeline = true;
+            } else if (arg.equals("--flat")) {
+                compiler.flat = true;
+            } else if (arg.equals("--cache")) {
+                compiler.cache = new ProgramCache(Paths.get(".goofy-cache"), ProgramCache.DEFAULT_MEMORY_BYTES);
+            } else if (arg.startsWith("--cache=")) {
+                compiler.cache = new ProgramCache(Paths.get(arg.substring("--cache=".length())), ProgramCache.DEFAULT_MEMORY_BYTES);
+            } else if (arg.equals("--profile")) {
+                compiler.profileFile = "goofy-profile.folded";
+            } else if (arg.startsWith("--profile=")) {
+                compiler.profileFile = arg.substring("--profile=".length());
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Invalid thread count: " + arg);
+                    return;
+                }
+            } else if (arg.equals("--flush=size")) {
+                flushPolicy = OutputSink.FlushPolicy.SIZE;
+            } else if (arg.equals("--flush=line")) {
+                flushPolicy = OutputSink.FlushPolicy.LINE;
+            } else if (arg.equals("--flush=exit")) {
+                flushPolicy = OutputSink.FlushPolicy.EXIT;
+            } else if (arg.startsWith("-")) {
+                System.err.println("Unknown option: " + arg);
+                return;
+            } else {
+                fileNames.add(arg);
+            }
+        }
+        if (fileNames.isEmpty()) {
+            System.err.println("Usage: java GoofyAhhCompiler [-O] [--cache[=dir]] [--profile[=file]] [--regex-lexer] [--vm] [--disassemble] [--jvm] [--emit-class] [--pipeline] [--flat] [--flush=size|line|exit] <file.txt>");
+            System.err.println("       java GoofyAhhCompiler --batch [--threads=N] [-O] [--cache[=dir]] [--regex-lexer] [--vm] [--jvm] [--flat] <file.txt|directory>...");
+            return;
+        }
+        if (compiler.pipeline && (compiler.optimize || compiler.useVm || compiler.disassemble || compiler.useJvm || compiler.emitClass
+                || compiler.cache != null)) {
+            System.err.println("--pipeline runs on the interpreter and cannot be combined with other backends, -O or --cache");
+            return;
+        }
+        if (compiler.flat && (compiler.optimize || compiler.pipeline || compiler.useVm || compiler.disassemble
+                || compiler.useJvm || compiler.emitClass || compiler.cache != null || compiler.profileFile != null)) {
+            System.err.println("--flat runs on its own interpreter and cannot be combined with other backends, -O, --cache or --profile");
+            return;
+        }
+        if (compiler.profileFile != null && (batch || compiler.pipeline || compiler.useVm || compiler.disassemble
+                || compiler.useJvm || compiler.emitClass)) {
+            System.err.println("--profile runs on the interpreter and cannot be combined with other backends, --pipeline or --batch");
+            return;
+        }
+        if (batch) {
+            if (compiler.pipeline || compiler.disassemble || compiler.emitClass) {
+                System.err.println("--batch cannot be combined with --pipeline, --disassemble or --emit-class");
+                return;
+            }
+            new BatchRunner(compiler, threads).run(fileNames);
+            return;
+        }
+
+        if (fileNames.size() > 1) {
+            System.err.println("Several files given; use --batch to run more than one");
+            return;
+        }
+
+        // Buffered program output; it is flushed before any error is printed so the two stay in order.
+        OutputSink out = new OutputSink(System.out, flushPolicy);
+        compiler.run(fileNames.get(0), out, System.err);
+        out.flush();
+    }
+
+    /**
+     * Compiles and runs one file with this compiler's options. Program output goes to out, which is flushed
+     * before anything is written to err; the caller flushes it at the end. Safe to call from several threads.
+     */
+    void run(String fileName, OutputSink out, PrintStream err) {
+        CharSequence source = FileReader.mapFile(fileName, err);
+        if (source == null) {
+            return;
+        }
+        if (pipeline) {
+            try {
+                new StatementPipeline(fileName, source, lexerMode, out).run();
+            } catch (RuntimeException e) {
+                out.flush();
+                err.println(e.getMessage());
+            }
+            return;
+        }
+        if (flat) {
+            runFlat(fileName, source, out, err);
+            return;
+        }
+        Profiler profiler = profileFile != null ? new Profiler() : null;
+        long mark = System.nanoTime();
+        String cacheKey = cache != null ? ProgramCache.key(source) : null;
+        BlockNode program = cacheKey != null ? cache.get(cacheKey) : null;
+        if (program == null) {
+            program = parseFile(fileName, source, err, Parser::parse);
+            if (program == null) {
+                return;
+            }
+            if (cacheKey != null) {
+                cache.put(cacheKey, program);
+            }
+        }
+        if (profiler != null) {
+            mark = profiler.phase("parse", mark);
+        }
+
+        Resolver resolver = new Resolver();
+        try {
+            resolver.resolve(program);
+        } catch (RuntimeException e) {
+            err.println("Resolve error: " + e.getMessage());
+            return;
+        }
+        if (profiler != null) {
+            mark = profiler.phase("resolve", mark);
+        }
+
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            optimizer.optimize(program);
+            for (String rewrite : optimizer.rewrites()) {
+                err.println("Optimizer: " + rewrite);
+            }
+            LoopOptimizer loopOptimizer = new LoopOptimizer(resolver.slotNames());
+            loopOptimizer.optimize(program);
+            for (String rewrite : loopOptimizer.rewrites()) {
+                err.println("Optimizer: " + rewrite);
+            }
+            if (profiler != null) {
+                mark = profiler.phase("optimize", mark);
+            }
+        }
+
+        ValueType[] slotTypes = new TypeAnalyzer().analyze(program, resolver.slotNames().size());
+        if (profiler != null) {
+            mark = profiler.phase("analyze", mark);
+        }
+        if (useJvm || emitClass) {
+            String className = JvmCompiler.classNameFor(fileName);
+            byte[] classBytes;
+            try {
+                classBytes = new JvmCompiler(resolver.slotNames(), slotTypes).compile(program, className);
+            } catch (RuntimeException e) {
+                err.println("Compile error: " + e.getMessage());
+                return;
+            }
+            if (emitClass) {
+                try {
+                    java.nio.file.Files.write(java.nio.file.Paths.get(className + ".class"), classBytes);
+                } catch (java.io.IOException e) {
+                    err.println("Error writing class file: " + e.getMessage());
+                }
+                return;
+            }
+            try {
+                JvmCompiler.runHidden(classBytes, out);
+            } catch (RuntimeException e) {
+                out.flush();
+                err.println("Runtime error: " + e.getMessage());
+            }
             return;
         }
 
-        String fileName = args[0];
-        String sourceCode = FileReader.readFile(fileName);
-        if (sourceCode == null) {
+        if (useVm || disassemble) {
+            Bytecode bytecode = new BytecodeCompiler(resolver.slotNames(), slotTypes).compile(program);
+            if (disassemble) {
+                // Through the sink, so the listing stays in order with everything else written to out.
+                for (String line : bytecode.disassemble().split("\n")) {
+                    out.println(line);
+                }
+                return;
+            }
+            try {
+                new VirtualMachine(out).run(bytecode);
+            } catch (RuntimeException e) {
+                out.flush();
+                err.println("Runtime error: " + e.getMessage());
+            }
             return;
         }
 
-        Lexer lexer = new Lexer(sourceCode);
-        List<Token> tokens;
+        Interpreter interpreter = profiler != null
+                ? new ProfilingInterpreter(resolver.slotNames(), slotTypes, out, profiler)
+                : new Interpreter(resolver.slotNames(), slotTypes, out);
+        try {
+            interpreter.execute(program);
+        } catch (RuntimeException e) {
+            out.flush();
+            err.println("Runtime error: " + e.getMessage());
+        }
+        if (profiler != null) {
+            profiler.phase("execute", mark);
+            out.flush();
+            writeProfile(profiler, fileName, source, err);
+        }
+    }
+
+    /** Parses, resolves and runs a file as a FlatAst on the FlatInterpreter. */
+    private void runFlat(String fileName, CharSequence source, OutputSink out, PrintStream err) {
+        FlatAst program = parseFile(fileName, source, err, Parser::parseFlat);
+        if (program == null) {
+            return;
+        }
         try {
-            tokens = lexer.tokenize();
+            program.resolve();
         } catch (RuntimeException e) {
-            System.err.println("Lexing error: " + e.getMessage());
+            err.println("Resolve error: " + e.getMessage());
             return;
         }
+        try {
+            new FlatInterpreter(program, out).execute();
+        } catch (RuntimeException e) {
+            out.flush();
+            err.println("Runtime error: " + e.getMessage());
+        }
+    }
+
+    /** Prints the flat profile to err and writes the collapsed stacks to profileFile. */
+    private void writeProfile(Profiler profiler, String fileName, CharSequence source, PrintStream err) {
+        // Node positions are offsets into the text the Parser read, which is the decoded file if it is not ASCII.
+        CharSequence text = source;
+        if (source instanceof MappedSource && ((MappedSource) source).hasNonAscii()) {
+            text = FileReader.readFile(fileName, err);
+            if (text == null) {
+                return;
+            }
+        }
+        profiler.printFlat(err, fileName, text);
+        try {
+            profiler.writeCollapsed(Paths.get(profileFile), text);
+        } catch (java.io.IOException e) {
+            err.println("Error writing profile: " + e.getMessage());
+        }
+    }
+
+    /** Lexes and parses a file with parser, printing any error to err and returning null. */
+    private <T> T parseFile(String fileName, CharSequence source, PrintStream err, Function<Parser, T> parser) {
+        T program = null;
+        String error = null;
+        try {
+            program = parse(source, lexerMode, parser);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        // The mapped view has one char per byte, which is only the file's text if the file is ASCII.
+        if (source instanceof MappedSource && (error == null
+                ? ((MappedSource) source).sawNonAscii() : ((MappedSource) source).hasNonAscii())) {
+            String sourceCode = FileReader.readFile(fileName, err);
+            if (sourceCode == null) {
+                return null;
+            }
+            error = null;
+            try {
+                program = parse(sourceCode, lexerMode, parser);
+            } catch (RuntimeException e) {
+                error = e.getMessage();
+            }
+        }
+        if (error != null) {
+            err.println(error);
+            return null;
+        }
+        return program;
+    }
+
+    /**
+     * Lexes and parses in one pass: the parser pulls tokens from the lexer as it needs them, so only its
+     * lookahead is held in memory. Errors come back with their "Lexing error:" or "Parsing error:" prefix.
+     */
+    static BlockNode parse(CharSequence source, Lexer.Mode lexerMode) {
+        return parse(source, lexerMode, Parser::parse);
+    }
 
-        Parser parser = new Parser(tokens);
+    /** As parse, building the result with parser, such as Parser::parseFlat. */
+    static <T> T parse(CharSequence source, Lexer.Mode lexerMode, Function<Parser, T> parser) {
+        TokenBuffer tokens = new Lexer(source, lexerMode).stream();
         try {
-            parser.parse();
+            return parser.apply(new Parser(tokens));
         } catch (RuntimeException e) {
-            System.err.println("Parsing error: " + e.getMessage());
+            if (tokens.failed()) {
+                throw new RuntimeException("Lexing error: " + e.getMessage());
+            }
+            // A lexing error anywhere in the file is reported before a parsing error, as if the whole
+            // file had been lexed first.
+            try {
+                tokens.drain();
+            } catch (RuntimeException lexingError) {
+                throw new RuntimeException("Lexing error: " + lexingError.getMessage());
+            }
+            // One line per syntax error, each with the prefix.
+            throw new RuntimeException("Parsing error: " + e.getMessage().replace("\n", "\nParsing error: "));
         }
     }
 }
@@ -1,141 +1,375 @@
-import java.util.HashMap;
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 class Interpreter {
-    private HashMap<String, Object> symbolTable = new HashMap<>();
+    private final List<String> slotNames;
+    private ValueType[] slotTypes;
+    // Boxed values live in frame, typed slots in the primitive array matching their ValueType.
+    private Object[] frame;
+    private int[] intFrame;
+    private double[] doubleFrame;
+    private boolean[] booleanFrame;
+    private final OutputSink out;
+
+    /** An Interpreter that prints each line to System.out as it goes. */
+    Interpreter(List<String> slotNames, ValueType[] slotTypes) {
+        this(slotNames, slotTypes, new OutputSink(System.out, OutputSink.FlushPolicy.LINE));
+    }
+
+    /**
+     * @param slotNames the Resolver's slot names; the frame holds one value per slot
+     * @param slotTypes the TypeAnalyzer's storage type of every slot
+     * @param out where prit writes; the caller flushes it
+     */
+    Interpreter(List<String> slotNames, ValueType[] slotTypes, OutputSink out) {
+        this.slotNames = slotNames;
+        this.out = out;
+        this.slotTypes = slotTypes;
+        this.frame = new Object[slotNames.size()];
+        this.intFrame = new int[slotNames.size()];
+        this.doubleFrame = new double[slotNames.size()];
+        this.booleanFrame = new boolean[slotNames.size()];
+    }
+
+    /**
+     * Makes room for slots the Resolver added since the frame was sized, when a program is resolved and run
+     * one statement at a time. New slots are boxed.
+     */
+    void growFrame() {
+        int size = slotNames.size();
+        if (size <= frame.length) {
+            return;
+        }
+        int capacity = Math.max(size, frame.length * 2);
+        int old = slotTypes.length;
+        slotTypes = Arrays.copyOf(slotTypes, capacity);
+        Arrays.fill(slotTypes, old, capacity, ValueType.UNKNOWN);
+        frame = Arrays.copyOf(frame, capacity);
+        intFrame = Arrays.copyOf(intFrame, capacity);
+        doubleFrame = Arrays.copyOf(doubleFrame, capacity);
+        booleanFrame = Arrays.copyOf(booleanFrame, capacity);
+    }
+
+    /** Sets a boxed slot before the program runs, such as an Engine parameter. */
+    void bind(int slot, Object value) {
+        frame[slot] = value;
+    }
+
+    public void execute(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                execute(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            switch (declaration.valueType) {
+                case INT: intFrame[declaration.slot] = evalInt(declaration.initializer); break;
+                case DOUBLE: doubleFrame[declaration.slot] = evalDouble(declaration.initializer); break;
+                case BOOLEAN: booleanFrame[declaration.slot] = evalBoolean(declaration.initializer); break;
+                default: frame[declaration.slot] = evaluate(declaration.initializer);
+            }
+        } else if (node instanceof PrintNode) {
+            ASTNode expression = ((PrintNode) node).expression;
+            switch (expression.valueType) {
+                case INT: out.println(evalInt(expression)); break;
+                case DOUBLE: out.println(evalDouble(expression)); break;
+                case BOOLEAN: out.println(evalBoolean(expression)); break;
+                default: out.println(evaluate(expression));
+            }
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            if (evaluateCondition(ifNode.condition)) {
+                execute(ifNode.thenBranch);
+            } else if (ifNode.elseBranch != null) {
+                execute(ifNode.elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            int iterations;
+            if (loop.iterations.valueType == ValueType.INT) {
+                iterations = evalInt(loop.iterations);
+            } else {
+                Object iterationsValue = evaluate(loop.iterations);
+                if (!(iterationsValue instanceof Integer)) {
+                    throw new RuntimeException("Expected an integer for 'rof' iterations.");
+                }
+                iterations = (int) iterationsValue;
+            }
+            for (int i = 0; i < iterations; i++) {
+                execute(loop.body);
+            }
+        } else {
+            throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    private boolean evaluateCondition(ASTNode condition) {
+        if (condition.valueType == ValueType.BOOLEAN) {
+            return evalBoolean(condition);
+        }
+        Object value = evaluate(condition);
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeException("Expected a boolean condition for 'fi'.");
+        }
+        return (Boolean) value;
+    }
 
     public Object evaluate(ASTNode node) {
+        switch (node.valueType) {
+            case INT: return evalInt(node);
+            case DOUBLE: return evalDouble(node);
+            case BOOLEAN: return evalBoolean(node);
+        }
         if (node instanceof LiteralNode) {
             //System.out.println("Evaluating LiteralNode: " + ((LiteralNode) node).value); // Debug
-            return parseLiteral(((LiteralNode) node).value);
+            LiteralNode literal = (LiteralNode) node;
+            return literal.constant != null ? literal.constant : ConstantPool.parse(literal.value);
+        } else if (node instanceof SlotNode) {
+            //System.out.println("Evaluating SlotNode: " + ((SlotNode) node).name); // Debug
+            SlotNode slotNode = (SlotNode) node;
+            Object value = frame[slotNode.slot];
+            if (slotNode.mayBeUndefined && value == null) {
+                throw new RuntimeException("Undefined variable: " + slotNode.name);
+            }
+            return value;
         } else if (node instanceof VariableNode) {
-            //System.out.println("Evaluating VariableNode: " + ((VariableNode) node).name); // Debug
-            String name = ((VariableNode) node).name;
-            if (!symbolTable.containsKey(name)) {
-                throw new RuntimeException("Undefined variable: " + name);
+            throw new RuntimeException("Unresolved variable: " + ((VariableNode) node).name);
+        } else if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            Object left = evaluate(logical.left);
+            if (decides(logical.operator.type, left)) {
+                return left;
             }
-            return symbolTable.get(name);
+            return applyBinary(logical.operator.type, left, evaluate(logical.right));
         } else if (node instanceof BinaryOperationNode) {
             BinaryOperationNode binaryNode = (BinaryOperationNode) node;
             //System.out.println("Evaluating BinaryOperationNode: " + binaryNode.operator.type); // Debug
             Object left = evaluate(binaryNode.left);
             Object right = evaluate(binaryNode.right);
             //System.out.println("Left: " + left + ", Right: " + right); // Debug
-            switch (binaryNode.operator.type) {
-                case OR:
-                    ensureBooleanOperands(left, right, "ro");
-                    return (Boolean) left || (Boolean) right;
-                case AND:
-                    ensureBooleanOperands(left, right, "dna");
-                    return (Boolean) left && (Boolean) right;
-                case PLUS:
-                    ensureNumericOperands(left, right, "+");
-                    return (left instanceof Integer && right instanceof Integer)
-                            ? (Integer) left + (Integer) right
-                            : ((Number) left).doubleValue() + ((Number) right).doubleValue();
-                case MINUS:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left - (Integer) right;
-                    } else {
-                        return ((Number) left).doubleValue() - ((Number) right).doubleValue();
-                    }
-                case STAR:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left * (Integer) right;
-                    } else {
-                        return ((Number) left).doubleValue() * ((Number) right).doubleValue();
-                    }
-                case SLASH:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        if ((Integer) right == 0) {
-                            throw new RuntimeException("Division by zero");
-                        }
-                        return (Integer) left / (Integer) right;
-                    } else {
-                        if (((Number) right).doubleValue() == 0) {
-                            throw new RuntimeException("Division by zero");
-                        }
-                        return ((Number) left).doubleValue() / ((Number) right).doubleValue();
-                    }
-                case LESS:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left < (Integer) right;
-                    } else {
-                        return (Double) left < (Double) right;
-                    }
-                case GREATER:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left > (Integer) right;
-                    } else {
-                        return (Double) left > (Double) right;
-                    }
-                case LESSEQ:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left <= (Integer) right;
-                    } else {
-                        return (Double) left <= (Double) right;
-                    }
-                case GREATEREQ:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return (Integer) left >= (Integer) right;
-                    } else {
-                        return (Double) left >= (Double) right;
-                    }
-                case EQEQ:
-                    if (left instanceof Integer && right instanceof Integer) {
-                        return ((Integer) left).equals((Integer) right);
-                    } else if (left instanceof Boolean && right instanceof Boolean){
-                        return ((Boolean) left).equals((Boolean) right);
-                    }else{
-                        return Objects.equals((Double) left, (Double) right);
+            return applyBinary(binaryNode.operator.type, left, right);
+        }
+        throw new RuntimeException("Unknown ASTNode type");
+    }
+
+    /** The boxed semantics of every binary operator, shared by all execution backends. */
+    static Object applyBinary(Token.Type operator, Object left, Object right) {
+        switch (operator) {
+            case OR:
+                ensureBooleanOperands(left, right, "ro");
+                return (Boolean) left || (Boolean) right;
+            case AND:
+                ensureBooleanOperands(left, right, "dna");
+                return (Boolean) left && (Boolean) right;
+            case PLUS:
+                ensureNumericOperands(left, right, "+");
+                return (left instanceof Integer && right instanceof Integer)
+                        ? (Integer) left + (Integer) right
+                        : ((Number) left).doubleValue() + ((Number) right).doubleValue();
+            case MINUS:
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left - (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() - ((Number) right).doubleValue();
+                }
+            case STAR:
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left * (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() * ((Number) right).doubleValue();
+                }
+            case SLASH:
+                if (left instanceof Integer && right instanceof Integer) {
+                    if ((Integer) right == 0) {
+                        throw new RuntimeException("Division by zero");
                     }
-                case NOTEQ:
-                    if(left instanceof Integer && right instanceof Integer){
-                        return !((Integer) left).equals((Integer) right);
-                    }else if(left instanceof Boolean && right instanceof Boolean) {
-                        return !((Boolean) left).equals((Boolean) right);
-                    }else{
-                        return !Objects.equals((Double) left, (Double) right);
+                    return (Integer) left / (Integer) right;
+                } else {
+                    if (((Number) right).doubleValue() == 0) {
+                        throw new RuntimeException("Division by zero");
                     }
-                default:
-                    throw new RuntimeException("Unsupported operator: " + binaryNode.operator.type);
-            }
+                    return ((Number) left).doubleValue() / ((Number) right).doubleValue();
+                }
+            case LESS:
+                ensureNumericOperands(left, right, "<");
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left < (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() < ((Number) right).doubleValue();
+                }
+            case GREATER:
+                ensureNumericOperands(left, right, ">");
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left > (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() > ((Number) right).doubleValue();
+                }
+            case LESSEQ:
+                ensureNumericOperands(left, right, "<=");
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left <= (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() <= ((Number) right).doubleValue();
+                }
+            case GREATEREQ:
+                ensureNumericOperands(left, right, ">=");
+                if (left instanceof Integer && right instanceof Integer) {
+                    return (Integer) left >= (Integer) right;
+                } else {
+                    return ((Number) left).doubleValue() >= ((Number) right).doubleValue();
+                }
+            case EQEQ:
+                return equal(left, right, "==");
+            case NOTEQ:
+                return !equal(left, right, "!=");
+            default:
+                throw new RuntimeException("Unsupported operator: " + operator);
         }
-        throw new RuntimeException("Unknown ASTNode type");
     }
 
-    private Object parseLiteral(String value) {
-        //System.out.println("parseLiteral received value: " + value);
-        if (value.matches("\\d+\\.\\d+")) {
-            return Double.parseDouble(value); // Parse doubles
-        } else if (value.equals("eurt")) {
-            return true;
-        } else if (value.equals("eslaf")) {
-            return false;
-        } else if (value.matches("\\d+")) {
-            return Integer.parseInt(value);
-        } else if (value.length() == 1) {
-            //System.out.println("Parsing character literal: " + value); // Debug
-            return value.charAt(0);
+    /** True if the left operand alone gives the result of a ro (true) or dna (false), so the right one is skipped. */
+    static boolean decides(Token.Type operator, Object left) {
+        return left instanceof Boolean && (Boolean) left == (operator == Token.Type.OR);
+    }
+
+    /** == on two ints, two booleans, or two numbers of which an int is promoted to a double. */
+    private static boolean equal(Object left, Object right, String operator) {
+        if (left instanceof Integer && right instanceof Integer || left instanceof Boolean && right instanceof Boolean) {
+            return left.equals(right);
+        } else if (left instanceof Number && right instanceof Number) {
+            return doubleEquals(((Number) left).doubleValue(), ((Number) right).doubleValue());
         }
-        throw new RuntimeException("Invalid literal: " + value);
+        throw new RuntimeException("Operator '" + operator + "' cannot compare " +
+                left.getClass().getSimpleName() + " and " +
+                right.getClass().getSimpleName());
+    }
+
+    // Bit patterns, as Double.equals compares: NaN equals NaN, 0.0 differs from -0.0.
+    private static boolean doubleEquals(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
     }
 
-    public void assignVariable(String name, Object value) {
-        if (name == null || name.trim().isEmpty()) {
-            throw new RuntimeException("Variable name cannot be null or empty.");
+    // The typed paths below only run for nodes the TypeAnalyzer proved to be INT, DOUBLE or BOOLEAN,
+    // and compute exactly what evaluate would before boxing.
+
+    int evalInt(ASTNode node) {
+        if (node instanceof SlotNode) {
+            return intFrame[((SlotNode) node).slot];
+        } else if (node instanceof LiteralNode) {
+            return ((LiteralNode) node).intValue;
         }
-        if (!name.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
-            throw new RuntimeException("Invalid variable name: " + name);
+        BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+        int left = evalInt(binaryNode.left);
+        int right = evalInt(binaryNode.right);
+        switch (binaryNode.operator.type) {
+            case MINUS: return left - right;
+            case STAR: return left * right;
+            case SLASH:
+                if (right == 0) {
+                    throw new RuntimeException("Division by zero");
+                }
+                return left / right;
+            default:
+                throw new RuntimeException("Unsupported operator: " + binaryNode.operator.type);
         }
-        symbolTable.put(name, value);
+    }
+
+    double evalDouble(ASTNode node) {
+        if (node instanceof SlotNode) {
+            return doubleFrame[((SlotNode) node).slot];
+        } else if (node instanceof LiteralNode) {
+            return ((LiteralNode) node).doubleValue;
+        }
+        BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+        if (binaryNode.operator.type == Token.Type.PLUS
+                && binaryNode.left.valueType == ValueType.INT && binaryNode.right.valueType == ValueType.INT) {
+            return evalInt(binaryNode.left) + evalInt(binaryNode.right);
+        }
+        double left = evalNumber(binaryNode.left);
+        double right = evalNumber(binaryNode.right);
+        switch (binaryNode.operator.type) {
+            case PLUS: return left + right;
+            case MINUS: return left - right;
+            case STAR: return left * right;
+            case SLASH:
+                if (right == 0) {
+                    throw new RuntimeException("Division by zero");
+                }
+                return left / right;
+            default:
+                throw new RuntimeException("Unsupported operator: " + binaryNode.operator.type);
+        }
+    }
+
+    boolean evalBoolean(ASTNode node) {
+        if (node instanceof SlotNode) {
+            return booleanFrame[((SlotNode) node).slot];
+        } else if (node instanceof LiteralNode) {
+            return ((LiteralNode) node).booleanValue;
+        } else if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            if (logical.operator.type == Token.Type.OR) {
+                return evalBoolean(logical.left) || evalBoolean(logical.right);
+            }
+            return evalBoolean(logical.left) && evalBoolean(logical.right);
+        }
+        ComparisonNode comparison = (ComparisonNode) node;
+        if (comparison.operandType == ValueType.BOOLEAN) {
+            boolean left = evalBoolean(comparison.left);
+            boolean right = evalBoolean(comparison.right);
+            switch (comparison.operator.type) {
+                case EQEQ: return left == right;
+                case NOTEQ: return left != right;
+            }
+        } else if (comparison.operandType == ValueType.INT) {
+            int left = evalInt(comparison.left);
+            int right = evalInt(comparison.right);
+            switch (comparison.operator.type) {
+                case LESS: return left < right;
+                case GREATER: return left > right;
+                case LESSEQ: return left <= right;
+                case GREATEREQ: return left >= right;
+                case EQEQ: return left == right;
+                case NOTEQ: return left != right;
+            }
+        } else {
+            double left = evalNumber(comparison.left);
+            double right = evalNumber(comparison.right);
+            switch (comparison.operator.type) {
+                case LESS: return left < right;
+                case GREATER: return left > right;
+                case LESSEQ: return left <= right;
+                case GREATEREQ: return left >= right;
+                case EQEQ: return doubleEquals(left, right);
+                case NOTEQ: return !doubleEquals(left, right);
+            }
+        }
+        throw new RuntimeException("Unsupported operator: " + comparison.operator.type);
+    }
+
+    private double evalNumber(ASTNode node) {
+        return node.valueType == ValueType.INT ? evalInt(node) : evalDouble(node);
     }
 
     public void printSymbolTable() {
+        Map<String, Object> symbolTable = new LinkedHashMap<>();
+        for (int slot = 0; slot < slotNames.size(); slot++) {
+            switch (slotTypes[slot]) {
+                case INT: symbolTable.put(slotNames.get(slot), intFrame[slot]); break;
+                case DOUBLE: symbolTable.put(slotNames.get(slot), doubleFrame[slot]); break;
+                case BOOLEAN: symbolTable.put(slotNames.get(slot), booleanFrame[slot]); break;
+                default:
+                    if (frame[slot] != null) {
+                        symbolTable.put(slotNames.get(slot), frame[slot]);
+                    }
+            }
+        }
         System.out.println("Symbol Table: " + symbolTable);
     }
 
-    private void ensureBooleanOperands(Object left, Object right, String operator) {
+    private static void ensureBooleanOperands(Object left, Object right, String operator) {
         if (!(left instanceof Boolean) || !(right instanceof Boolean)) {
             throw new RuntimeException("Operator '" + operator + "' requires boolean operands. Got: " +
                     left.getClass().getSimpleName() + " and " +
@@ -143,7 +377,7 @@ class Interpreter {
         }
     }
 
-    private void ensureNumericOperands(Object left, Object right, String operator) {
+    private static void ensureNumericOperands(Object left, Object right, String operator) {
         if (!(left instanceof Number) || !(right instanceof Number)) {
             throw new RuntimeException("Operator '" + operator + "' requires numeric operands. Got: " +
                     left.getClass().getSimpleName() + " and " +
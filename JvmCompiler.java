@@ -0,0 +1,413 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Compiles a resolved and type-analyzed program into a JVM class so HotSpot can JIT the user program itself.
+ * The program body becomes a static run() method, typed slots become int/double JVM locals, rof counters
+ * become hidden int locals and boxed operations call into JvmRuntime. The class also gets a main method,
+ * so an emitted .class file runs with the compiler's classes on the class path.
+ */
+class JvmCompiler {
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, DCONST_0 = 0x0e, DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a;
+    private static final int IADD = 0x60, ISUB = 0x64, IMUL = 0x68, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b;
+    private static final int IXOR = 0x82, I2D = 0x87;
+    private static final int DCMPL = 0x97, DCMPG = 0x98;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    private static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7, RETURN = 0xb1;
+    private static final int DUP = 0x59, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+    private static final String RUNTIME = "JvmRuntime";
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    private final List<String> slotNames;
+    private final ValueType[] slotTypes;
+    private final int[] localIndices;
+    private final int firstCounter;
+    private ClassFileBuilder classFile;
+    private ClassFileBuilder.Code code;
+    private int loopDepth = 0;
+
+    JvmCompiler(List<String> slotNames, ValueType[] slotTypes) {
+        this.slotNames = slotNames;
+        this.slotTypes = slotTypes;
+        this.localIndices = new int[slotNames.size()];
+        int next = 0;
+        for (int slot = 0; slot < slotNames.size(); slot++) {
+            localIndices[slot] = next;
+            next += slotTypes[slot] == ValueType.DOUBLE ? 2 : 1;
+        }
+        this.firstCounter = next;
+    }
+
+    /** Class name an emitted .class file gets for a source file, e.g. Goofy_test for test.txt. */
+    static String classNameFor(String fileName) {
+        String base = java.nio.file.Paths.get(fileName).getFileName().toString();
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) {
+            base = base.substring(0, dot);
+        }
+        return "Goofy_" + base.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    public byte[] compile(BlockNode program, String className) {
+        classFile = new ClassFileBuilder();
+
+        code = new ClassFileBuilder.Code();
+        // Every local starts initialized, so the verifier accepts reads on paths that skipped a declaration.
+        for (int slot = 0; slot < slotNames.size(); slot++) {
+            switch (slotTypes[slot]) {
+                case DOUBLE: code.op(DCONST_0, 2); local(DSTORE, localIndices[slot], -2); break;
+                case INT:
+                case BOOLEAN: code.op(ICONST_0, 1); local(ISTORE, localIndices[slot], -1); break;
+                default: code.op(ACONST_NULL, 1); local(ASTORE, localIndices[slot], -1);
+            }
+        }
+        code.useLocals(firstCounter);
+        compileStatement(program);
+        code.op(RETURN, 0);
+        classFile.addMethod(ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_STATIC, "run", "()V", code);
+
+        // public static void main(String[] args) { try { run(); } catch (RuntimeException e) { report(e); return; } flush(); }
+        code = new ClassFileBuilder.Code();
+        code.useLocals(1);
+        code.op2(INVOKESTATIC, classFile.methodRef(className, "run", "()V"), 0);
+        int end = code.position();
+        invokeRuntime("flush", "()V", 0);
+        code.op(RETURN, 0);
+        int handler = code.position();
+        code.setStack(1);
+        invokeRuntime("reportRuntimeError", "(Ljava/lang/RuntimeException;)V", -1);
+        code.op(RETURN, 0);
+        code.handler(0, end, handler, classFile.classRef("java/lang/RuntimeException"));
+        classFile.addMethod(ClassFileBuilder.ACC_PUBLIC | ClassFileBuilder.ACC_STATIC,
+                "main", "([Ljava/lang/String;)V", code);
+
+        return classFile.toByteArray(className, "java/lang/Object");
+    }
+
+    /** Defines the class as a hidden class in this package and runs its program, printing to out. */
+    static void runHidden(byte[] classBytes, OutputSink out) {
+        MethodHandle run;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            run = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot define generated class", e);
+        }
+        JvmRuntime.output(out);
+        try {
+            run.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            JvmRuntime.resetOutput();
+        }
+    }
+
+    private void compileStatement(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                compileStatement(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            int local = localIndices[declaration.slot];
+            switch (declaration.valueType) {
+                case INT:
+                case BOOLEAN: compileTyped(declaration.initializer); local(ISTORE, local, -1); break;
+                case DOUBLE: compileTyped(declaration.initializer); local(DSTORE, local, -2); break;
+                default: compileBoxed(declaration.initializer); local(ASTORE, local, -1);
+            }
+        } else if (node instanceof PrintNode) {
+            ASTNode expression = ((PrintNode) node).expression;
+            switch (expression.valueType) {
+                case INT: compileTyped(expression); invokeRuntime("print", "(I)V", -1); break;
+                case DOUBLE: compileTyped(expression); invokeRuntime("print", "(D)V", -2); break;
+                case BOOLEAN: compileTyped(expression); invokeRuntime("print", "(Z)V", -1); break;
+                default: compileBoxed(expression); invokeRuntime("print", "(" + OBJECT + ")V", -1);
+            }
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            if (ifNode.condition.valueType == ValueType.BOOLEAN) {
+                compileTyped(ifNode.condition);
+            } else {
+                compileBoxed(ifNode.condition);
+                invokeRuntime("condition", "(" + OBJECT + ")Z", 0);
+            }
+            ClassFileBuilder.Label elseLabel = new ClassFileBuilder.Label();
+            code.branch(IFEQ, elseLabel, -1);
+            compileStatement(ifNode.thenBranch);
+            if (ifNode.elseBranch != null) {
+                ClassFileBuilder.Label end = new ClassFileBuilder.Label();
+                code.branch(GOTO, end, 0);
+                code.place(elseLabel);
+                compileStatement(ifNode.elseBranch);
+                code.place(end);
+            } else {
+                code.place(elseLabel);
+            }
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            if (loop.iterations.valueType == ValueType.INT) {
+                compileTyped(loop.iterations);
+            } else {
+                compileBoxed(loop.iterations);
+                invokeRuntime("iterations", "(" + OBJECT + ")I", 0);
+            }
+            int counter = firstCounter + loopDepth;
+            code.useLocals(counter + 1);
+            local(ISTORE, counter, -1);
+            loopDepth++;
+            ClassFileBuilder.Label head = new ClassFileBuilder.Label();
+            ClassFileBuilder.Label exit = new ClassFileBuilder.Label();
+            code.place(head);
+            local(ILOAD, counter, 1);
+            code.branch(IFLE, exit, -1);
+            code.iinc(counter, -1);
+            compileStatement(loop.body);
+            code.branch(GOTO, head, 0);
+            code.place(exit);
+            loopDepth--;
+        } else {
+            throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    /** Pushes the unboxed value of a node the TypeAnalyzer typed as INT, DOUBLE or BOOLEAN. */
+    private void compileTyped(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            LiteralNode literal = (LiteralNode) node;
+            switch (node.valueType) {
+                case INT: pushInt(literal.intValue); break;
+                case DOUBLE: pushDouble(literal.doubleValue); break;
+                default: pushInt(literal.booleanValue ? 1 : 0);
+            }
+        } else if (node instanceof SlotNode) {
+            int slot = ((SlotNode) node).slot;
+            if (slotTypes[slot] == ValueType.DOUBLE) {
+                local(DLOAD, localIndices[slot], 2);
+            } else {
+                local(ILOAD, localIndices[slot], 1);
+            }
+        } else if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            ClassFileBuilder.Label decided = new ClassFileBuilder.Label();
+            ClassFileBuilder.Label end = new ClassFileBuilder.Label();
+            compileTyped(logical.left);
+            code.branch(logical.operator.type == Token.Type.OR ? IFNE : IFEQ, decided, -1);
+            compileTyped(logical.right);
+            code.branch(GOTO, end, 0);
+            code.setStack(code.stack() - 1);
+            code.place(decided);
+            pushInt(logical.operator.type == Token.Type.OR ? 1 : 0);
+            code.place(end);
+        } else if (node instanceof ComparisonNode) {
+            ComparisonNode comparison = (ComparisonNode) node;
+            Token.Type operator = comparison.operator.type;
+            if (comparison.operandType == ValueType.BOOLEAN) {
+                compileTyped(comparison.left);
+                compileTyped(comparison.right);
+                code.op(IXOR, -1);
+                if (operator == Token.Type.EQEQ) {
+                    pushInt(1);
+                    code.op(IXOR, -1);
+                }
+            } else if (comparison.operandType == ValueType.INT) {
+                compileTyped(comparison.left);
+                compileTyped(comparison.right);
+                switch (operator) {
+                    case LESS: booleanFromBranch(IF_ICMPLT, -2); break;
+                    case GREATER: booleanFromBranch(IF_ICMPGT, -2); break;
+                    case LESSEQ: booleanFromBranch(IF_ICMPLE, -2); break;
+                    case GREATEREQ: booleanFromBranch(IF_ICMPGE, -2); break;
+                    case EQEQ: booleanFromBranch(IF_ICMPEQ, -2); break;
+                    default: booleanFromBranch(IF_ICMPNE, -2);
+                }
+            } else {
+                compileAsDouble(comparison.left);
+                compileAsDouble(comparison.right);
+                // dcmpg for < and <=, dcmpl for > and >=: either way a NaN operand makes the comparison false.
+                switch (operator) {
+                    case LESS: code.op(DCMPG, -3); booleanFromBranch(IFLT, -1); break;
+                    case GREATER: code.op(DCMPL, -3); booleanFromBranch(IFGT, -1); break;
+                    case LESSEQ: code.op(DCMPG, -3); booleanFromBranch(IFLE, -1); break;
+                    case GREATEREQ: code.op(DCMPL, -3); booleanFromBranch(IFGE, -1); break;
+                    case EQEQ: invokeRuntime("deq", "(DD)Z", -3); break;
+                    default: invokeRuntime("deq", "(DD)Z", -3); pushInt(1); code.op(IXOR, -1);
+                }
+            }
+        } else {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            Token.Type operator = binaryNode.operator.type;
+            if (node.valueType == ValueType.DOUBLE) {
+                if (operator == Token.Type.PLUS && binaryNode.left.valueType == ValueType.INT
+                        && binaryNode.right.valueType == ValueType.INT) {
+                    // The interpreter adds two ints as ints and only then widens the sum.
+                    compileTyped(binaryNode.left);
+                    compileTyped(binaryNode.right);
+                    code.op(IADD, -1);
+                    code.op(I2D, 1);
+                    return;
+                }
+                compileAsDouble(binaryNode.left);
+                compileAsDouble(binaryNode.right);
+                switch (operator) {
+                    case PLUS: code.op(DADD, -2); break;
+                    case MINUS: code.op(DSUB, -2); break;
+                    case STAR: code.op(DMUL, -2); break;
+                    default: invokeRuntime("ddiv", "(DD)D", -2);
+                }
+                return;
+            }
+            compileTyped(binaryNode.left);
+            compileTyped(binaryNode.right);
+            switch (operator) {
+                case MINUS: code.op(ISUB, -1); break;
+                case STAR: code.op(IMUL, -1); break;
+                default: invokeRuntime("idiv", "(II)I", -1);
+            }
+        }
+    }
+
+    private void compileAsDouble(ASTNode node) {
+        compileTyped(node);
+        if (node.valueType == ValueType.INT) {
+            code.op(I2D, 1);
+        }
+    }
+
+    /** Pushes the boxed value of any node. */
+    private void compileBoxed(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            LiteralNode literal = (LiteralNode) node;
+            Object constant = literal.constant;
+            if (constant == null) {
+                pushString(literal.value);
+                invokeRuntime("literal", "(Ljava/lang/String;)" + OBJECT, 0);
+            } else if (constant instanceof Character) {
+                pushInt((Character) constant);
+                code.op2(INVOKESTATIC, classFile.methodRef("java/lang/Character", "valueOf", "(C)Ljava/lang/Character;"), 0);
+            } else {
+                compileTyped(node);
+                box(node.valueType);
+            }
+            return;
+        }
+        if (node.valueType != ValueType.UNKNOWN) {
+            compileTyped(node);
+            box(node.valueType);
+            return;
+        }
+        if (node instanceof SlotNode) {
+            SlotNode slotNode = (SlotNode) node;
+            local(ALOAD, localIndices[slotNode.slot], 1);
+            if (slotNode.mayBeUndefined) {
+                pushString(slotNode.name);
+                invokeRuntime("checked", "(" + OBJECT + "Ljava/lang/String;)" + OBJECT, -1);
+            }
+        } else if (node instanceof LogicalNode) {
+            // The left value stays on the stack as the result when it decides; otherwise binary combines both.
+            LogicalNode logical = (LogicalNode) node;
+            ClassFileBuilder.Label end = new ClassFileBuilder.Label();
+            compileBoxed(logical.left);
+            code.op(DUP, 1);
+            pushInt(logical.operator.type.ordinal());
+            invokeRuntime("decides", "(" + OBJECT + "I)Z", -1);
+            code.branch(IFNE, end, -1);
+            compileBoxed(logical.right);
+            pushInt(logical.operator.type.ordinal());
+            invokeRuntime("binary", "(" + OBJECT + OBJECT + "I)" + OBJECT, -2);
+            code.place(end);
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            compileBoxed(binaryNode.left);
+            compileBoxed(binaryNode.right);
+            pushInt(binaryNode.operator.type.ordinal());
+            invokeRuntime("binary", "(" + OBJECT + OBJECT + "I)" + OBJECT, -2);
+        } else if (node instanceof VariableNode) {
+            throw new RuntimeException("Unresolved variable: " + ((VariableNode) node).name);
+        } else {
+            throw new RuntimeException("Unknown ASTNode type");
+        }
+    }
+
+    private void box(ValueType type) {
+        switch (type) {
+            case INT:
+                code.op2(INVOKESTATIC, classFile.methodRef("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"), 0);
+                break;
+            case DOUBLE:
+                code.op2(INVOKESTATIC, classFile.methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"), -1);
+                break;
+            default:
+                code.op2(INVOKESTATIC, classFile.methodRef("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;"), 0);
+        }
+    }
+
+    /** Turns a conditional branch that consumes its operands into a pushed 0/1. */
+    private void booleanFromBranch(int opcode, int operandsDelta) {
+        ClassFileBuilder.Label isTrue = new ClassFileBuilder.Label();
+        ClassFileBuilder.Label end = new ClassFileBuilder.Label();
+        code.branch(opcode, isTrue, operandsDelta);
+        pushInt(0);
+        code.branch(GOTO, end, 0);
+        code.setStack(code.stack() - 1);
+        code.place(isTrue);
+        pushInt(1);
+        code.place(end);
+    }
+
+    private void invokeRuntime(String name, String descriptor, int stackDelta) {
+        code.op2(INVOKESTATIC, classFile.methodRef(RUNTIME, name, descriptor), stackDelta);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op1(BIPUSH, value, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op2(SIPUSH, value, 1);
+        } else {
+            loadConstant(classFile.integer(value));
+        }
+    }
+
+    private void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.op(DCONST_0, 2);
+        } else if (value == 1.0) {
+            code.op(DCONST_1, 2);
+        } else {
+            code.op2(LDC2_W, classFile.doubleConstant(value), 2);
+        }
+    }
+
+    private void pushString(String value) {
+        loadConstant(classFile.string(value));
+    }
+
+    private void loadConstant(int index) {
+        if (index <= 0xFF) {
+            code.op1(LDC, index, 1);
+        } else {
+            code.op2(LDC_W, index, 1);
+        }
+    }
+
+    private void local(int opcode, int index, int stackDelta) {
+        if (index <= 0xFF) {
+            code.op1(opcode, index, stackDelta);
+        } else {
+            code.op(WIDE, 0);
+            code.op2(opcode, index, stackDelta);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Helpers called from classes generated by the JvmCompiler, so generated code keeps the Interpreter's
+ * error messages and boxed semantics without inlining them.
+ */
+public final class JvmRuntime {
+    private static final Token.Type[] OPERATORS = Token.Type.values();
+
+    // Per thread so batch runs of --jvm programs keep their output apart. The compiler sets it for in-process
+    // runs; an emitted class run on its own uses the default policy.
+    private static final ThreadLocal<OutputSink> OUT =
+            ThreadLocal.withInitial(() -> new OutputSink(System.out, OutputSink.defaultPolicy()));
+
+    private JvmRuntime() { }
+
+    /** Sends the current thread's generated-program output to out. */
+    static void output(OutputSink out) {
+        OUT.set(out);
+    }
+
+    /** Forgets the current thread's sink, so a pool thread does not keep a finished run's buffer alive. */
+    static void resetOutput() {
+        OUT.remove();
+    }
+
+    public static Object binary(Object left, Object right, int operator) {
+        return Interpreter.applyBinary(OPERATORS[operator], left, right);
+    }
+
+    /** Whether the left operand of a ro or dna is its result, so the right one is not evaluated. */
+    public static boolean decides(Object left, int operator) {
+        return Interpreter.decides(OPERATORS[operator], left);
+    }
+
+    public static int idiv(int left, int right) {
+        if (right == 0) {
+            throw new RuntimeException("Division by zero");
+        }
+        return left / right;
+    }
+
+    public static double ddiv(double left, double right) {
+        if (right == 0) {
+            throw new RuntimeException("Division by zero");
+        }
+        return left / right;
+    }
+
+    /** Double equality as Objects.equals sees it: NaN equals NaN, 0.0 differs from -0.0. */
+    public static boolean deq(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    public static boolean condition(Object value) {
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeException("Expected a boolean condition for 'fi'.");
+        }
+        return (Boolean) value;
+    }
+
+    public static int iterations(Object value) {
+        if (!(value instanceof Integer)) {
+            throw new RuntimeException("Expected an integer for 'rof' iterations.");
+        }
+        return (Integer) value;
+    }
+
+    public static Object checked(Object value, String name) {
+        if (value == null) {
+            throw new RuntimeException("Undefined variable: " + name);
+        }
+        return value;
+    }
+
+    /** Evaluates a literal that failed to parse at compile time, which throws the interpreter's error. */
+    public static Object literal(String value) {
+        return ConstantPool.parse(value);
+    }
+
+    public static void print(int value) {
+        OUT.get().println(value);
+    }
+
+    public static void print(double value) {
+        OUT.get().println(value);
+    }
+
+    public static void print(boolean value) {
+        OUT.get().println(value);
+    }
+
+    public static void print(Object value) {
+        OUT.get().println(value);
+    }
+
+    /** Called by the main method of an emitted class when the program ends. */
+    public static void flush() {
+        OUT.get().flush();
+    }
+
+    /** Called by the main method of an emitted class when the program fails. */
+    public static void reportRuntimeError(RuntimeException e) {
+        OUT.get().flush();
+        System.err.println("Runtime error: " + e.getMessage());
+    }
+}
@@ -1,12 +1,18 @@
-import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class Lexer {
-    private String input;
+public class Lexer implements TokenBuffer.Source {
+    /** SCANNER is the default hand-written scanner, REGEX is the original reference implementation. */
+    enum Mode { SCANNER, REGEX }
+
+    private final CharSequence input;
+    private final Mode mode;
     private int pos = 0;
+    private Matcher matcher;
 
+    // The pattern and keyword tables are shared by every Lexer, including concurrent ones in --batch mode,
+    // and are never written after class initialization; each Lexer keeps its own Matcher.
     private static final Pattern tokenPatterns = Pattern.compile(
             "\\s*(?:(tni|elbuod|loob|rahc)|" +      // Reversed types
                     "(prit|fi|rof|esle)|" +                    // Other reversed keywords
@@ -19,83 +25,339 @@ public class Lexer {
                     "(\\+|\\-|\\*|\\/|=|;|,|\\(|\\)|\\{|\\}))" // Symbols
     );
 
-    public Lexer(String input_){
+    // Keywords in the order the regex alternation tries them. The only keyword that is a prefix of
+    // another one is "ro" (of "rof"), which the regex tries later, so the longest trie match agrees
+    // with the regex. Keywords need no word boundary: "tnix" lexes as TNI followed by "x".
+    private static final String[] KEYWORDS = {
+            "tni", "elbuod", "loob", "rahc", "prit", "fi", "rof", "esle", "eurt", "eslaf", "ro", "dna"
+    };
+    private static final Token.Type[] KEYWORD_TYPES = {
+            Token.Type.TNI, Token.Type.ELBUOD, Token.Type.LOOB, Token.Type.RAHC,
+            Token.Type.PRIT, Token.Type.FI, Token.Type.ROF, Token.Type.ESLE,
+            Token.Type.TRUE, Token.Type.FALSE, Token.Type.OR, Token.Type.AND
+    };
+
+    // Keyword trie over 'a'..'z': trieNext[state][c - 'a'] is the next state (0 = none),
+    // trieKeyword[state] is the index of the keyword ending in that state (-1 = none).
+    private static final int[][] trieNext;
+    private static final int[] trieKeyword;
+
+    static {
+        int maxStates = 1;
+        for (String keyword : KEYWORDS) {
+            maxStates += keyword.length();
+        }
+        int[][] next = new int[maxStates][26];
+        int[] keywordAt = new int[maxStates];
+        java.util.Arrays.fill(keywordAt, -1);
+        int states = 1;
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            int state = 0;
+            for (char c : KEYWORDS[k].toCharArray()) {
+                if (next[state][c - 'a'] == 0) {
+                    next[state][c - 'a'] = states++;
+                }
+                state = next[state][c - 'a'];
+            }
+            keywordAt[state] = k;
+        }
+        trieNext = next;
+        trieKeyword = keywordAt;
+    }
+
+    public Lexer(CharSequence input_){
+        this(input_, Mode.SCANNER);
+    }
+
+    public Lexer(CharSequence input_, Mode mode_){
+        this(input_, mode_, 0);
+    }
+
+    /** A lexer that starts at position; the text before it is not read. */
+    Lexer(CharSequence input_, Mode mode_, int position){
         this.input = input_;
+        this.mode = mode_;
+        this.pos = position;
+    }
+
+    /** Offset of the first character not yet lexed. */
+    int position(){
+        return pos;
     }
 
     public List<Token> tokenize(){
-        List<Token> tokens = new ArrayList<>();
-        Matcher matcher = tokenPatterns.matcher(input);
-
-        while(pos < input.length()){
-            matcher.region(pos, input.length());
-                if(matcher.lookingAt()){
-                    String group = matcher.group();
-                    if(matcher.group(1) != null){
-                        switch (matcher.group(1)){
-                            case "tni": tokens.add(new Token(Token.Type.TNI, "tni")); break;
-                            case "elbuod": tokens.add(new Token(Token.Type.ELBUOD, "elbuod")); break;
-                            case "loob": tokens.add(new Token(Token.Type.LOOB, "loob")); break;
-                            case "rahc": tokens.add(new Token(Token.Type.RAHC, "rahc")); break;
-                        }
-                    }else if(matcher.group(2) != null){
-                        switch (matcher.group(2)){
-                            case "prit": tokens.add(new Token(Token.Type.PRIT, "prit")); break;
-                            case "fi": tokens.add(new Token(Token.Type.FI, "fi")); break;
-                            case "esle": tokens.add(new Token(Token.Type.ESLE, "esle")); break;
-                            case "rof": tokens.add(new Token(Token.Type.ROF, "rof")); break;
-                        }
-                    }else if(matcher.group(3) != null){
-                        switch (matcher.group(3)){
-                            case "eurt": tokens.add(new Token(Token.Type.TRUE, "eurt")); break;
-                            case "eslaf": tokens.add(new Token(Token.Type.FALSE, "eslaf")); break;
-                        }
-                    }else if(matcher.group(4) != null){
-                        switch (matcher.group(4)){
-                            case "ro": tokens.add(new Token(Token.Type.OR, "or")); break;
-                            case "dna": tokens.add(new Token(Token.Type.AND, "and")); break;
-                        }
-                    }else if (matcher.group(5) != null) {
-                        tokens.add(new Token(Token.Type.IDENTIFIER, matcher.group(5)));
-                    }else if (matcher.group(6) != null) {
-                        tokens.add(new Token(Token.Type.NUMBER, matcher.group(6)));
-                    }else if(matcher.group(7) != null){
-                        //System.out.println("Lexer matched CHAR_LITERAL: " + matcher.group(6));
-                        tokens.add(new Token(Token.Type.CHAR_LITERAL, matcher.group(7)));
-                    }else if (matcher.group(8) != null) {
-                        switch (matcher.group(8)) {
-                            case "==": tokens.add(new Token(Token.Type.EQEQ, "==")); break;
-                            case "!=": tokens.add(new Token(Token.Type.NOTEQ, "!=")); break;
-                            case "<=": tokens.add(new Token(Token.Type.LESSEQ, "<=")); break;
-                            case ">=": tokens.add(new Token(Token.Type.GREATEREQ, ">=")); break;
-                            case "<": tokens.add(new Token(Token.Type.LESS, "<")); break;
-                            case ">": tokens.add(new Token(Token.Type.GREATER, ">")); break;
-                        }
-                    }else if (matcher.group(9) != null) {
-                        switch (matcher.group(9)) {
-                            case "+": tokens.add(new Token(Token.Type.PLUS, "+")); break;
-                            case "-": tokens.add(new Token(Token.Type.MINUS, "-")); break;
-                            case "*": tokens.add(new Token(Token.Type.STAR, "*")); break;
-                            case "/": tokens.add(new Token(Token.Type.SLASH, "/")); break;
-                            case "=": tokens.add(new Token(Token.Type.EQUALS, "=")); break;
-                            case ";": tokens.add(new Token(Token.Type.SEMICOLON, ";")); break;
-                            case ",": tokens.add(new Token(Token.Type.COMMA, ",")); break;
-                            case "(": tokens.add(new Token(Token.Type.LPAREN, "(")); break;
-                            case ")": tokens.add(new Token(Token.Type.RPAREN, ")")); break;
-                            case "{": tokens.add(new Token(Token.Type.LBRACE, "{")); break;
-                            case "}": tokens.add(new Token(Token.Type.RBRACE, "}")); break;
-                        }
-                    }
-                    pos += group.length();
-                }else{
-                    throw new RuntimeException("Unexpected character at position " + pos);
-                }
+        return tokenizeToBuffer().toList();
+    }
 
+    /** Tokenizes the whole input into a compact buffer without allocating an object per token. */
+    public TokenBuffer tokenizeToBuffer(){
+        TokenBuffer tokens = new TokenBuffer(input);
+        while(next(tokens)){
         }
-        tokens.add(new Token(Token.Type.EOF, null));
-//        for(Token token : tokens){
-//            System.out.println(token);
-//        }
         return tokens;
     }
+
+    /**
+     * A buffer that lexes on demand while the parser reads it. Only the tokens the parser has not released
+     * are kept, so memory stays bounded by the parser's lookahead instead of the input size.
+     */
+    public TokenBuffer stream(){
+        return new TokenBuffer(input, this);
+    }
+
+    /** Appends the next token to the buffer; returns false once EOF has been appended. */
+    @Override
+    public boolean next(TokenBuffer tokens){
+        return mode == Mode.REGEX ? nextRegex(tokens) : scanNext(tokens);
+    }
+
+    private boolean scanNext(TokenBuffer tokens){
+        CharSequence in = input;
+        int length = in.length();
+
+        if(pos >= length){
+            tokens.add(Token.Type.EOF, length, 0);
+            return false;
+        }
+        int start = pos;
+        int p = pos;
+        while(p < length && isWhitespace(in.charAt(p))){
+            p++;
+        }
+        if(p == length){
+            throw error(start);
+        }
+
+        char c = in.charAt(p);
+        int keyword = c >= 'a' && c <= 'z' ? matchKeyword(in, p) : -1;
+        if(keyword >= 0){
+            tokens.add(KEYWORD_TYPES[keyword], p, KEYWORDS[keyword].length());
+            pos = p + KEYWORDS[keyword].length();
+            return true;
+        }
+
+        if(isIdentifierStart(c)){
+            int end = p + 1;
+            while(end < length && isIdentifierPart(in.charAt(end))){
+                end++;
+            }
+            tokens.add(Token.Type.IDENTIFIER, p, end - p);
+            pos = end;
+            return true;
+        }
+
+        if(isDigit(c)){
+            int end = p + 1;
+            while(end < length && isDigit(in.charAt(end))){
+                end++;
+            }
+            if(end + 1 < length && in.charAt(end) == '.' && isDigit(in.charAt(end + 1))){
+                end += 2;
+                while(end < length && isDigit(in.charAt(end))){
+                    end++;
+                }
+            }
+            tokens.add(Token.Type.NUMBER, p, end - p);
+            pos = end;
+            return true;
+        }
+
+        Token.Type type;
+        int size = 1;
+        char n = p + 1 < length ? in.charAt(p + 1) : '\0';
+        switch (c){
+            case '\'':
+                int end = charLiteralEnd(in, p);
+                if(end < 0){
+                    throw error(start);
+                }
+                tokens.add(Token.Type.CHAR_LITERAL, p + 1, end - p - 2);
+                pos = end;
+                return true;
+            case '=':
+                if(n == '='){ type = Token.Type.EQEQ; size = 2; }
+                else { type = Token.Type.EQUALS; }
+                break;
+            case '!':
+                if(n != '='){
+                    throw error(start);
+                }
+                type = Token.Type.NOTEQ; size = 2;
+                break;
+            case '<':
+                if(n == '='){ type = Token.Type.LESSEQ; size = 2; }
+                else { type = Token.Type.LESS; }
+                break;
+            case '>':
+                if(n == '='){ type = Token.Type.GREATEREQ; size = 2; }
+                else { type = Token.Type.GREATER; }
+                break;
+            case '+': type = Token.Type.PLUS; break;
+            case '-': type = Token.Type.MINUS; break;
+            case '*': type = Token.Type.STAR; break;
+            case '/': type = Token.Type.SLASH; break;
+            case ';': type = Token.Type.SEMICOLON; break;
+            case ',': type = Token.Type.COMMA; break;
+            case '(': type = Token.Type.LPAREN; break;
+            case ')': type = Token.Type.RPAREN; break;
+            case '{': type = Token.Type.LBRACE; break;
+            case '}': type = Token.Type.RBRACE; break;
+            default:
+                throw error(start);
+        }
+        tokens.add(type, p, size);
+        pos = p + size;
+        return true;
+    }
+
+    /** Index of the longest keyword starting at p, or -1. */
+    private static int matchKeyword(CharSequence in, int p){
+        int state = 0;
+        int found = -1;
+        for(int i = p; i < in.length(); i++){
+            char c = in.charAt(i);
+            if(c < 'a' || c > 'z'){
+                break;
+            }
+            state = trieNext[state][c - 'a'];
+            if(state == 0){
+                break;
+            }
+            if(trieKeyword[state] >= 0){
+                found = trieKeyword[state];
+            }
+        }
+        return found;
+    }
+
+    /** End offset (exclusive) of a character literal opening at p, or -1 if it is malformed. */
+    private static int charLiteralEnd(CharSequence in, int p){
+        int length = in.length();
+        // '\\x' : two backslashes followed by any character except a line terminator
+        if(p + 4 < length && in.charAt(p + 1) == '\\' && in.charAt(p + 2) == '\\'
+                && !isLineTerminator(in.charAt(p + 3)) && in.charAt(p + 4) == '\''){
+            return p + 5;
+        }
+        if(p + 2 < length && in.charAt(p + 1) != '\\' && in.charAt(p + 1) != '\''
+                && in.charAt(p + 2) == '\''){
+            return p + 3;
+        }
+        return -1;
+    }
+
+    // Mirrors the character classes of the reference regex: \s, \d and [a-zA-Z_] are ASCII-only.
+    private static boolean isWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c){
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c){
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private boolean nextRegex(TokenBuffer tokens){
+        if(pos >= input.length()){
+            tokens.add(Token.Type.EOF, input.length(), 0);
+            return false;
+        }
+        if(matcher == null){
+            matcher = tokenPatterns.matcher(input);
+        }
+        matcher.region(pos, input.length());
+        if(matcher.lookingAt()){
+            String group = matcher.group();
+            Token.Type type = null;
+            int g = 1;
+            while(matcher.group(g) == null){
+                g++;
+            }
+            switch (g){
+                case 1:
+                    switch (matcher.group(1)){
+                        case "tni": type = Token.Type.TNI; break;
+                        case "elbuod": type = Token.Type.ELBUOD; break;
+                        case "loob": type = Token.Type.LOOB; break;
+                        case "rahc": type = Token.Type.RAHC; break;
+                    }
+                    break;
+                case 2:
+                    switch (matcher.group(2)){
+                        case "prit": type = Token.Type.PRIT; break;
+                        case "fi": type = Token.Type.FI; break;
+                        case "esle": type = Token.Type.ESLE; break;
+                        case "rof": type = Token.Type.ROF; break;
+                    }
+                    break;
+                case 3:
+                    switch (matcher.group(3)){
+                        case "eurt": type = Token.Type.TRUE; break;
+                        case "eslaf": type = Token.Type.FALSE; break;
+                    }
+                    break;
+                case 4:
+                    switch (matcher.group(4)){
+                        case "ro": type = Token.Type.OR; break;
+                        case "dna": type = Token.Type.AND; break;
+                    }
+                    break;
+                case 5: type = Token.Type.IDENTIFIER; break;
+                case 6: type = Token.Type.NUMBER; break;
+                case 7:
+                    //System.out.println("Lexer matched CHAR_LITERAL: " + matcher.group(7));
+                    type = Token.Type.CHAR_LITERAL;
+                    break;
+                case 8:
+                    switch (matcher.group(8)) {
+                        case "==": type = Token.Type.EQEQ; break;
+                        case "!=": type = Token.Type.NOTEQ; break;
+                        case "<=": type = Token.Type.LESSEQ; break;
+                        case ">=": type = Token.Type.GREATEREQ; break;
+                        case "<": type = Token.Type.LESS; break;
+                        case ">": type = Token.Type.GREATER; break;
+                    }
+                    break;
+                case 9:
+                    switch (matcher.group(9)) {
+                        case "+": type = Token.Type.PLUS; break;
+                        case "-": type = Token.Type.MINUS; break;
+                        case "*": type = Token.Type.STAR; break;
+                        case "/": type = Token.Type.SLASH; break;
+                        case "=": type = Token.Type.EQUALS; break;
+                        case ";": type = Token.Type.SEMICOLON; break;
+                        case ",": type = Token.Type.COMMA; break;
+                        case "(": type = Token.Type.LPAREN; break;
+                        case ")": type = Token.Type.RPAREN; break;
+                        case "{": type = Token.Type.LBRACE; break;
+                        case "}": type = Token.Type.RBRACE; break;
+                    }
+                    break;
+            }
+            tokens.add(type, matcher.start(g), matcher.end(g) - matcher.start(g));
+            pos += group.length();
+            return true;
+        }else{
+            throw error(pos);
+        }
+    }
+
+    // Reports the offset where the failed token's leading whitespace starts, as both modes always have, and
+    // the line and column of the character that could not be lexed.
+    private RuntimeException error(int offset){
+        int at = offset;
+        while(at < input.length() && isWhitespace(input.charAt(at))){
+            at++;
+        }
+        return new RuntimeException("Unexpected character at position " + offset + " (" + new LineIndex(input).describe(at) + ")");
+    }
 }
@@ -0,0 +1,35 @@
+import java.util.Arrays;
+
+/**
+ * Line starts of a source text, for turning the character offsets kept on tokens and nodes into 1-based
+ * lines and columns. Building one reads the whole text, so it is only done when a diagnostic is reported.
+ */
+class LineIndex {
+    private int[] starts = new int[64];
+    private int count = 1; // line 1 starts at 0
+
+    LineIndex(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+    }
+
+    int line(int offset) {
+        int index = Arrays.binarySearch(starts, 0, count, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    int column(int offset) {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    /** "line L, column C", as appended to error messages. */
+    String describe(int offset) {
+        return "line " + line(offset) + ", column " + column(offset);
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Loop-invariant code motion for rof bodies (part of -O, after the Optimizer). An expression inside a loop
+ * that reads no variable the loop body declares computes the same value on every iteration, so it is
+ * evaluated once into a hidden slot declared just before the outermost loop it is invariant in, and the loop
+ * reads the slot instead. Nested loops are handled together: an expression can move out of several loops
+ * at once, and what moves out of an inner loop can move further out of the loop around it.
+ *
+ * Only expressions that cannot fail are moved, since hoisting evaluates them even when the loop runs zero
+ * times or the branch they were in is not taken: every node must have a static type from the TypeAnalyzer,
+ * no read may need an undefined check, and division is only by a non-zero literal. Their values then live in
+ * typed slots, so the backends run them unboxed.
+ */
+class LoopOptimizer {
+    private static final class Loop {
+        final LoopNode node;
+        final BitSet declared;
+        final List<VarDeclarationNode> hoisted = new ArrayList<>();
+
+        Loop(LoopNode node, BitSet declared) {
+            this.node = node;
+            this.declared = declared;
+        }
+    }
+
+    private final List<String> slotNames;
+    private final List<Loop> loops = new ArrayList<>(); // enclosing loops, outermost first
+    private final List<String> rewrites = new ArrayList<>();
+
+    /** @param slotNames the Resolver's slot names; hidden slots for hoisted values are added to it */
+    LoopOptimizer(List<String> slotNames) {
+        this.slotNames = slotNames;
+    }
+
+    /** Rewrites the resolved, already optimized program in place. */
+    public void optimize(BlockNode program) {
+        optimize(program, 0);
+    }
+
+    /** As optimize, with the first boundSlots slots set from outside the program; reads of them never move. */
+    public void optimize(BlockNode program, int boundSlots) {
+        new TypeAnalyzer().analyze(program, slotNames.size(), boundSlots);
+        optimizeBlock(program);
+    }
+
+    /** One human readable line per hoisted expression, in program order. */
+    public List<String> rewrites() {
+        return rewrites;
+    }
+
+    private void optimizeBlock(BlockNode block) {
+        List<ASTNode> statements = new ArrayList<>(block.statements.size());
+        for (ASTNode statement : block.statements) {
+            if (statement instanceof LoopNode) {
+                LoopNode loopNode = (LoopNode) statement;
+                loopNode.iterations = hoist(loopNode.iterations); // evaluated once per run of the loop itself
+                Loop loop = new Loop(loopNode, new BitSet());
+                declared(loopNode.body, loop.declared);
+                loops.add(loop);
+                optimizeBlock(loopNode.body);
+                loops.remove(loops.size() - 1);
+                // Parts of a hoisted value may be invariant in the loops further out as well.
+                for (VarDeclarationNode declaration : loop.hoisted) {
+                    declaration.initializer = hoist(declaration.initializer);
+                    statements.add(declaration);
+                }
+            } else {
+                optimizeStatement(statement);
+            }
+            statements.add(statement);
+        }
+        block.statements = statements;
+    }
+
+    private void optimizeStatement(ASTNode node) {
+        if (node instanceof BlockNode) {
+            optimizeBlock((BlockNode) node);
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            declaration.initializer = hoist(declaration.initializer);
+        } else if (node instanceof PrintNode) {
+            PrintNode print = (PrintNode) node;
+            print.expression = hoist(print.expression);
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            ifNode.condition = hoist(ifNode.condition);
+            optimizeBlock(ifNode.thenBranch);
+            if (ifNode.elseBranch != null) {
+                optimizeBlock(ifNode.elseBranch);
+            }
+        }
+    }
+
+    /** Moves the largest invariant parts of an expression out of the enclosing loops. */
+    private ASTNode hoist(ASTNode node) {
+        if (loops.isEmpty() || !(node instanceof BinaryOperationNode)) {
+            return node;
+        }
+        BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+        BitSet reads = new BitSet();
+        if (cannotFail(node, reads)) {
+            for (Loop loop : loops) { // outermost first
+                if (!loop.declared.intersects(reads)) {
+                    return hoistTo(loop, binaryNode);
+                }
+            }
+        }
+        binaryNode.left = hoist(binaryNode.left);
+        binaryNode.right = hoist(binaryNode.right);
+        return node;
+    }
+
+    private ASTNode hoistTo(Loop loop, BinaryOperationNode expression) {
+        int slot = slotNames.size();
+        String name = "$hoisted" + slot;
+        slotNames.add(name);
+        VarDeclarationNode declaration = new VarDeclarationNode(TokenBuffer.fixedToken(keyword(expression.valueType)), name, expression);
+        declaration.slot = slot;
+        loop.hoisted.add(declaration);
+        rewrites.add("hoisted " + Optimizer.describe(expression) + " out of rof (" + Optimizer.describe(loop.node.iterations) + ")");
+        SlotNode read = new SlotNode(name, slot, false);
+        read.valueType = expression.valueType;
+        return read;
+    }
+
+    /** True if evaluating node can never throw; collects the slots it reads. */
+    private static boolean cannotFail(ASTNode node, BitSet reads) {
+        if (node.valueType == ValueType.UNKNOWN) {
+            return false;
+        }
+        if (node instanceof LiteralNode) {
+            return ((LiteralNode) node).constant != null;
+        } else if (node instanceof SlotNode) {
+            SlotNode slotNode = (SlotNode) node;
+            reads.set(slotNode.slot);
+            return !slotNode.mayBeUndefined;
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            if (binaryNode.operator.type == Token.Type.SLASH) {
+                Object divisor = binaryNode.right instanceof LiteralNode ? ((LiteralNode) binaryNode.right).constant : null;
+                if (!(divisor instanceof Number) || ((Number) divisor).doubleValue() == 0) {
+                    return false;
+                }
+            }
+            return cannotFail(binaryNode.left, reads) && cannotFail(binaryNode.right, reads);
+        }
+        return false;
+    }
+
+    private static Token.Type keyword(ValueType type) {
+        switch (type) {
+            case INT: return Token.Type.TNI;
+            case DOUBLE: return Token.Type.ELBUOD;
+            default: return Token.Type.LOOB;
+        }
+    }
+
+    private static void declared(ASTNode node, BitSet slots) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                declared(statement, slots);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            slots.set(((VarDeclarationNode) node).slot);
+        } else if (node instanceof IfNode) {
+            declared(((IfNode) node).thenBranch, slots);
+            if (((IfNode) node).elseBranch != null) {
+                declared(((IfNode) node).elseBranch, slots);
+            }
+        } else if (node instanceof LoopNode) {
+            declared(((LoopNode) node).body, slots);
+        }
+    }
+}
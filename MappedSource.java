@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped source file seen as one char per byte, so the lexer reads the file without copying it
+ * onto the heap. For ASCII files this is exactly the decoded text. Any other byte is remembered so the
+ * caller can fall back to decoding the file into a String.
+ */
+class MappedSource implements CharSequence {
+    private final MappedByteBuffer bytes;
+    private boolean sawNonAscii;
+
+    private MappedSource(MappedByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    static MappedSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        byte b = bytes.get(index);
+        if (b < 0) {
+            sawNonAscii = true;
+        }
+        return (char) (b & 0xFF);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+
+    /** True if charAt has returned a non-ASCII byte. The lexer reads every byte of a file it accepts. */
+    boolean sawNonAscii() {
+        return sawNonAscii;
+    }
+
+    /** The file's bytes, as an independent read-only view. */
+    ByteBuffer bytes() {
+        return bytes.duplicate();
+    }
+
+    /** True if any byte of the file is outside ASCII, including bytes the lexer never reached. */
+    boolean hasNonAscii() {
+        for (int i = 0, n = bytes.limit(); i < n && !sawNonAscii; i++) {
+            if (bytes.get(i) < 0) {
+                sawNonAscii = true;
+            }
+        }
+        return sawNonAscii;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Instruction set of the VirtualMachine. Each instruction is one int in Bytecode.code followed by its operands.
+ * Prefixes name the operand kind: I int, D double, Z boolean, A boxed value of any type.
+ * Typed values sit on the VM's long stack, boxed values on its parallel Object stack.
+ */
+final class Opcode {
+    static final int ICONST = 0;        // value
+    static final int DCONST = 1;        // high bits, low bits
+    static final int ZCONST = 2;        // 0 or 1
+    static final int ACONST = 3;        // constant index
+    static final int BAD_LITERAL = 4;   // constant index; fails like the interpreter does for an invalid literal
+    static final int ILOAD = 5;         // slot
+    static final int DLOAD = 6;         // slot
+    static final int ZLOAD = 7;         // slot
+    static final int ALOAD = 8;         // slot
+    static final int ALOAD_CHECKED = 9; // slot; fails if the slot was never assigned
+    static final int ISTORE = 10;       // slot
+    static final int DSTORE = 11;       // slot
+    static final int ZSTORE = 12;       // slot
+    static final int ASTORE = 13;       // slot
+    static final int I2D = 14;
+    static final int BOX_I = 15;
+    static final int BOX_D = 16;
+    static final int BOX_Z = 17;
+    static final int ISUB = 18;
+    static final int IMUL = 19;
+    static final int IDIV = 20;
+    static final int IADD_D = 21;       // int + int widened to double, as the interpreter's '+' does
+    static final int DADD = 22;
+    static final int DSUB = 23;
+    static final int DMUL = 24;
+    static final int DDIV = 25;
+    static final int ILT = 26;
+    static final int IGT = 27;
+    static final int ILE = 28;
+    static final int IGE = 29;
+    static final int IEQ = 30;
+    static final int INE = 31;
+    static final int DLT = 32;
+    static final int DGT = 33;
+    static final int DLE = 34;
+    static final int DGE = 35;
+    static final int DEQ = 36;
+    static final int DNE = 37;
+    static final int ZEQ = 38;
+    static final int ZNE = 39;
+    static final int ABINARY = 40;      // Token.Type ordinal; boxed operands through Interpreter.applyBinary
+    static final int ACONDITION = 41;   // boxed value to boolean, fails unless it is a Boolean
+    static final int AITERATIONS = 42;  // boxed value to int, fails unless it is an Integer
+    static final int PRINT_I = 43;
+    static final int PRINT_D = 44;
+    static final int PRINT_Z = 45;
+    static final int PRINT_A = 46;
+    static final int JUMP = 47;         // target
+    static final int JUMP_IF_FALSE = 48; // target
+    // Short-circuit ro/dna. The typed forms keep a deciding boolean as the result and jump, or pop it and go on
+    // to the right operand; the boxed forms never pop, as ABINARY checks and combines both operands.
+    static final int JUMP_IF_TRUE_OR_POP = 49;  // target
+    static final int JUMP_IF_FALSE_OR_POP = 50; // target
+    static final int AJUMP_IF_TRUE = 51;        // target; jumps if the boxed value is true
+    static final int AJUMP_IF_FALSE = 52;       // target; jumps if the boxed value is false
+    static final int LOOP = 53;         // counter slot, exit target; leaves the loop once the counter runs out
+    static final int HALT = 54;
+
+    static final String[] NAMES = {
+            "ICONST", "DCONST", "ZCONST", "ACONST", "BAD_LITERAL",
+            "ILOAD", "DLOAD", "ZLOAD", "ALOAD", "ALOAD_CHECKED",
+            "ISTORE", "DSTORE", "ZSTORE", "ASTORE",
+            "I2D", "BOX_I", "BOX_D", "BOX_Z",
+            "ISUB", "IMUL", "IDIV", "IADD_D", "DADD", "DSUB", "DMUL", "DDIV",
+            "ILT", "IGT", "ILE", "IGE", "IEQ", "INE",
+            "DLT", "DGT", "DLE", "DGE", "DEQ", "DNE",
+            "ZEQ", "ZNE",
+            "ABINARY", "ACONDITION", "AITERATIONS",
+            "PRINT_I", "PRINT_D", "PRINT_Z", "PRINT_A",
+            "JUMP", "JUMP_IF_FALSE", "JUMP_IF_TRUE_OR_POP", "JUMP_IF_FALSE_OR_POP", "AJUMP_IF_TRUE", "AJUMP_IF_FALSE",
+            "LOOP", "HALT"
+    };
+
+    private Opcode() { }
+
+    static int operandCount(int opcode) {
+        switch (opcode) {
+            case DCONST:
+            case LOOP:
+                return 2;
+            case ICONST: case ZCONST: case ACONST: case BAD_LITERAL:
+            case ILOAD: case DLOAD: case ZLOAD: case ALOAD: case ALOAD_CHECKED:
+            case ISTORE: case DSTORE: case ZSTORE: case ASTORE:
+            case ABINARY: case JUMP: case JUMP_IF_FALSE:
+            case JUMP_IF_TRUE_OR_POP: case JUMP_IF_FALSE_OR_POP: case AJUMP_IF_TRUE: case AJUMP_IF_FALSE:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+}
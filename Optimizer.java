@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Optional AST rewrites between resolving and execution (-O):
+ * constant BinaryOperationNodes are folded with Interpreter.applyBinary, so results match the Interpreter
+ * exactly; a ro or dna whose left operand is a constant that decides it becomes that constant; reads of a
+ * variable that is declared only once, with a constant, become that constant;
+ * fi statements with a constant condition keep only the branch that runs; rof loops with a constant count
+ * of zero or less are dropped. Expressions that would fail at run time are left alone, so the error still
+ * happens when and where it used to.
+ */
+class Optimizer {
+    private final List<String> rewrites = new ArrayList<>();
+    private final HashMap<Integer, Integer> declarationCounts = new HashMap<>();
+    private final HashMap<Integer, Object> constantSlots = new HashMap<>();
+
+    /** Rewrites the resolved program in place. */
+    public void optimize(BlockNode program) {
+        optimize(program, 0);
+    }
+
+    /** As optimize, with the first boundSlots slots set from outside the program, as if declared once more. */
+    public void optimize(BlockNode program, int boundSlots) {
+        for (int slot = 0; slot < boundSlots; slot++) {
+            declarationCounts.put(slot, 1);
+        }
+        countDeclarations(program);
+        optimizeBlock(program);
+    }
+
+    /** One human readable line per rewrite, in program order. */
+    public List<String> rewrites() {
+        return rewrites;
+    }
+
+    private void optimizeBlock(BlockNode block) {
+        List<ASTNode> statements = new ArrayList<>(block.statements.size());
+        for (ASTNode statement : block.statements) {
+            ASTNode optimized = optimizeStatement(statement);
+            if (optimized instanceof BlockNode && !(statement instanceof BlockNode)) {
+                statements.addAll(((BlockNode) optimized).statements); // a fi replaced by its live branch
+            } else if (optimized != null) {
+                statements.add(optimized);
+            }
+        }
+        block.statements = statements;
+    }
+
+    /** Returns the replacement statement, or null if the statement can be dropped. */
+    private ASTNode optimizeStatement(ASTNode node) {
+        if (node instanceof BlockNode) {
+            optimizeBlock((BlockNode) node);
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            declaration.initializer = optimizeExpression(declaration.initializer);
+            if (declaration.initializer instanceof LiteralNode && declarationCounts.get(declaration.slot) == 1) {
+                Object constant = ((LiteralNode) declaration.initializer).constant;
+                if (constant != null) {
+                    constantSlots.put(declaration.slot, constant);
+                }
+            }
+        } else if (node instanceof PrintNode) {
+            PrintNode print = (PrintNode) node;
+            print.expression = optimizeExpression(print.expression);
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            String conditionText = describe(ifNode.condition);
+            ifNode.condition = optimizeExpression(ifNode.condition);
+            Object condition = constantOf(ifNode.condition);
+            if (condition instanceof Boolean) {
+                BlockNode live = (Boolean) condition ? ifNode.thenBranch : ifNode.elseBranch;
+                if (!(Boolean) condition) {
+                    rewrites.add("removed unreachable fi branch of fi (" + conditionText + ")");
+                } else if (ifNode.elseBranch != null) {
+                    rewrites.add("removed unreachable esle branch of fi (" + conditionText + ")");
+                } else {
+                    rewrites.add("replaced fi (" + conditionText + ") with its body");
+                }
+                if (live == null) {
+                    return null;
+                }
+                optimizeBlock(live);
+                return live;
+            }
+            optimizeBlock(ifNode.thenBranch);
+            if (ifNode.elseBranch != null) {
+                optimizeBlock(ifNode.elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            String iterationsText = describe(loop.iterations);
+            loop.iterations = optimizeExpression(loop.iterations);
+            Object iterations = constantOf(loop.iterations);
+            if (iterations instanceof Integer && (Integer) iterations <= 0) {
+                rewrites.add("removed rof (" + iterationsText + ") with no iterations");
+                return null;
+            }
+            optimizeBlock(loop.body);
+        }
+        return node;
+    }
+
+    /** Folds one statement-level expression and reports it once if anything changed. */
+    private ASTNode optimizeExpression(ASTNode node) {
+        String before = describe(node);
+        ASTNode folded = fold(node);
+        String after = describe(folded);
+        if (!after.equals(before)) {
+            rewrites.add("folded " + before + " to " + after);
+        }
+        return folded;
+    }
+
+    private ASTNode fold(ASTNode node) {
+        if (node instanceof SlotNode) {
+            SlotNode slotNode = (SlotNode) node;
+            Object constant = constantSlots.get(slotNode.slot);
+            if (constant != null && !slotNode.mayBeUndefined) {
+                return LiteralNode.folded(constant);
+            }
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            binaryNode.left = fold(binaryNode.left);
+            binaryNode.right = fold(binaryNode.right);
+            Object left = constantOf(binaryNode.left);
+            Object right = constantOf(binaryNode.right);
+            if (node instanceof LogicalNode && Interpreter.decides(binaryNode.operator.type, left)) {
+                return LiteralNode.folded(left); // the right operand never runs
+            }
+            if (left != null && right != null) {
+                Object result;
+                try {
+                    result = Interpreter.applyBinary(binaryNode.operator.type, left, right);
+                } catch (RuntimeException e) {
+                    return node; // fails at run time, as it did before
+                }
+                return LiteralNode.folded(result);
+            }
+        }
+        return node;
+    }
+
+    private static Object constantOf(ASTNode node) {
+        return node instanceof LiteralNode ? ((LiteralNode) node).constant : null;
+    }
+
+    private void countDeclarations(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                countDeclarations(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            declarationCounts.merge(((VarDeclarationNode) node).slot, 1, Integer::sum);
+        } else if (node instanceof IfNode) {
+            countDeclarations(((IfNode) node).thenBranch);
+            if (((IfNode) node).elseBranch != null) {
+                countDeclarations(((IfNode) node).elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            countDeclarations(((LoopNode) node).body);
+        }
+    }
+
+    /** Source-like text of an expression, for the rewrite report. */
+    static String describe(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            LiteralNode literal = (LiteralNode) node;
+            return literal.constant != null ? describeConstant(literal.constant) : literal.value;
+        } else if (node instanceof SlotNode) {
+            return ((SlotNode) node).name;
+        } else if (node instanceof VariableNode) {
+            return ((VariableNode) node).name;
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            return "(" + describe(binaryNode.left) + " " + operatorText(binaryNode.operator)
+                    + " " + describe(binaryNode.right) + ")";
+        }
+        return node.getClass().getSimpleName();
+    }
+
+    private static String describeConstant(Object constant) {
+        if (constant instanceof Boolean) {
+            return (Boolean) constant ? "eurt" : "eslaf";
+        } else if (constant instanceof Character) {
+            return "'" + constant + "'";
+        }
+        return String.valueOf(constant);
+    }
+
+    static String operatorText(Token operator) {
+        switch (operator.type) {
+            case OR: return "ro";
+            case AND: return "dna";
+            default: return operator.value;
+        }
+    }
+}
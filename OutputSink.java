@@ -0,0 +1,146 @@
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Collects prit output in a reusable byte buffer and writes it to a PrintStream in large batches instead of one
+ * synchronized, flushing println per value. ints, chars and booleans are formatted straight into the buffer;
+ * doubles go through Double.toString so they print exactly as println would.
+ */
+class OutputSink {
+    /**
+     * When buffered output is written: SIZE whenever the buffer fills, LINE after every line (for interactive
+     * use), EXIT only when the program ends or fails, holding everything in memory until then.
+     */
+    enum FlushPolicy { SIZE, LINE, EXIT }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final PrintStream target;
+    private final FlushPolicy policy;
+    // The charset System.out encodes with, for text that is not ASCII.
+    private final Charset charset;
+    private byte[] buffer = new byte[CAPACITY];
+    private int count = 0;
+
+    OutputSink(PrintStream target, FlushPolicy policy) {
+        this.target = target;
+        this.policy = policy;
+        String encoding = System.getProperty("sun.stdout.encoding");
+        this.charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    /** LINE when writing to a terminal, SIZE otherwise. */
+    static FlushPolicy defaultPolicy() {
+        return System.console() != null ? FlushPolicy.LINE : FlushPolicy.SIZE;
+    }
+
+    void println(int value) {
+        ensure(11 + NEWLINE.length);
+        if (value < 0) {
+            buffer[count++] = '-';
+        }
+        // Digits are written backwards from the end of the number; negating as a long covers MIN_VALUE.
+        long magnitude = Math.abs((long) value);
+        int digits = 1;
+        for (long rest = magnitude / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + magnitude % 10);
+            magnitude /= 10;
+        }
+        count = end;
+        endLine();
+    }
+
+    void println(double value) {
+        appendAscii(Double.toString(value));
+        endLine();
+    }
+
+    void println(boolean value) {
+        byte[] text = value ? TRUE : FALSE;
+        ensure(text.length);
+        System.arraycopy(text, 0, buffer, count, text.length);
+        count += text.length;
+        endLine();
+    }
+
+    void println(char value) {
+        if (value < 0x80) {
+            ensure(1);
+            buffer[count++] = (byte) value;
+        } else {
+            appendText(String.valueOf(value));
+        }
+        endLine();
+    }
+
+    /** Prints a boxed value as println(Object) would. */
+    void println(Object value) {
+        if (value instanceof Integer) {
+            println((int) (Integer) value);
+        } else if (value instanceof Double) {
+            println((double) (Double) value);
+        } else if (value instanceof Boolean) {
+            println((boolean) (Boolean) value);
+        } else if (value instanceof Character) {
+            println((char) (Character) value);
+        } else {
+            appendText(String.valueOf(value));
+            endLine();
+        }
+    }
+
+    /** Writes out everything buffered and flushes the target. */
+    void flush() {
+        if (count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+        target.flush();
+    }
+
+    private void appendAscii(String text) {
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void appendText(String text) {
+        byte[] bytes = text.getBytes(charset);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void endLine() {
+        ensure(NEWLINE.length);
+        System.arraycopy(NEWLINE, 0, buffer, count, NEWLINE.length);
+        count += NEWLINE.length;
+        if (policy == FlushPolicy.LINE) {
+            flush();
+        }
+    }
+
+    private void ensure(int space) {
+        if (count + space <= buffer.length) {
+            return;
+        }
+        if (policy != FlushPolicy.EXIT && count > 0) {
+            target.write(buffer, 0, count);
+            count = 0;
+        }
+        if (count + space > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + space));
+        }
+    }
+}
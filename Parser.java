@@ -1,219 +1,458 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Recursive-descent parser over a TokenBuffer, with precedence climbing for expressions. Nodes go to an
+ * AstBuilder, so the same grammar builds the ASTNode tree (parse) or the FlatAst (parseFlat). Both keep going
+ * after a syntax error: they record the error, skip to the end of the broken statement and go on, so one
+ * run reports up to MAX_ERRORS errors.
+ */
 class Parser {
-    private List<Token> tokens;
-    private int current = 0;
-    private final Interpreter interpreter;
+    private static final int MAX_ERRORS = 20;
+    // The passes over the ASTNode tree recurse once per level of an expression and of a block; these keep
+    // them within a default 1MB thread stack. The FlatInterpreter evaluates expressions without recursion,
+    // so parseFlat only limits blocks.
+    private static final int MAX_EXPRESSION_DEPTH = 2000;
+    private static final int MAX_BLOCK_DEPTH = 500;
+
+    // Binding power of every binary operator, indexed by Token.Type ordinal; 0 for tokens that end an
+    // expression. All operators are left associative.
+    private static final int[] PRECEDENCE = new int[Token.Type.values().length];
+    static {
+        PRECEDENCE[Token.Type.OR.ordinal()] = 1;
+        PRECEDENCE[Token.Type.AND.ordinal()] = 2;
+        PRECEDENCE[Token.Type.EQEQ.ordinal()] = 3;
+        PRECEDENCE[Token.Type.NOTEQ.ordinal()] = 3;
+        PRECEDENCE[Token.Type.LESS.ordinal()] = 4;
+        PRECEDENCE[Token.Type.GREATER.ordinal()] = 4;
+        PRECEDENCE[Token.Type.LESSEQ.ordinal()] = 4;
+        PRECEDENCE[Token.Type.GREATEREQ.ordinal()] = 4;
+        PRECEDENCE[Token.Type.PLUS.ordinal()] = 5;
+        PRECEDENCE[Token.Type.MINUS.ordinal()] = 5;
+        PRECEDENCE[Token.Type.STAR.ordinal()] = 6;
+        PRECEDENCE[Token.Type.SLASH.ordinal()] = 6;
+    }
+
+    /** A syntax error at a known place; anything else thrown while parsing (a lexing error) ends the parse. */
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
+        SyntaxError(String message) {
+            super(message);
+        }
+    }
 
-    public Parser(List<Token> tokens) {
+    private TokenBuffer tokens;
+    private int current = 0;
+    private final ConstantPool constants = new ConstantPool();
+    private final List<String> errors = new ArrayList<>();
+    private AstBuilder builder = new TreeBuilder(constants);
+    private LineIndex lines; // built at the first error
+    private int maxExpressionDepth = MAX_EXPRESSION_DEPTH;
+    private int blockDepth = 0;
+
+    // The stacks of expression(), kept from one expression to the next. An operand has the depth of its tree
+    // and, in a ro or dna run, its operand count and the start of the operator before it; an operator waiting
+    // for its right operand has its precedence, start and, for ro and dna, the index of the first operand of
+    // its run.
+    private int[] operands = new int[16];
+    private int[] operandDepths = new int[16];
+    private int[] operandSizes = new int[16];
+    private int[] operandOperatorStarts = new int[16];
+    private Token[] operators = new Token[16];
+    private int[] operatorPrecedences = new int[16];
+    private int[] operatorStarts = new int[16];
+    private int[] runStarts = new int[16];
+
+
+    public Parser(TokenBuffer tokens) {
         this.tokens = tokens;
-        this.interpreter = new Interpreter();
     }
 
 
-    private Token peek() {
-        return tokens.get(current);
+    /** Literal values of the parsed program, shared by its LiteralNodes. */
+    public ConstantPool constants() {
+        return constants;
+    }
+
+    private Token.Type peek() {
+        return tokens.type(current);
     }
 
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd()) current++;
-        return previous();
+        // Nothing before previous() is read again, so a streaming buffer may drop it.
+        tokens.release(current - 1);
     }
 
+    // Only identifiers and literals allocate here; symbols and keywords share one Token per type.
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private boolean isAtEnd() {
-        return peek().type == Token.Type.EOF;
+        return peek() == Token.Type.EOF;
     }
 
-    private boolean match(Token.Type... types) {
-        for (Token.Type type : types) {
-            if (peek().type == type) {
-                advance();
-                return true;
-            }
+    private boolean match(Token.Type type) {
+        if (peek() == type) {
+            advance();
+            return true;
         }
         return false;
     }
 
-    public void parse() {
-        while (!isAtEnd()) {
-            statement();
+    /** Parses the whole input; if there are syntax errors, throws them all, one per line, in source order. */
+    public BlockNode parse() {
+        return (BlockNode) ((TreeBuilder) builder).take(program());
+    }
+
+    /** As parse, into a FlatAst that shares this parser's constants. */
+    public FlatAst parseFlat() {
+        FlatAst flat = new FlatAst(constants);
+        builder = flat;
+        maxExpressionDepth = Integer.MAX_VALUE;
+        flat.program = program();
+        flat.trim();
+        return flat;
+    }
+
+    /**
+     * The next top-level statement, or null at the end of the input; for running a statement at a time. Nothing
+     * runs after a syntax error, so at the first one the rest of the input is only parsed for its syntax errors,
+     * and all of them are thrown as parse throws them.
+     */
+    public ASTNode nextStatement() {
+        if (isAtEnd()) {
+            return null;
         }
+        int start = current;
+        try {
+            int statement = statement();
+            if (errors.isEmpty()) {
+                return ((TreeBuilder) builder).take(statement);
+            }
+        } catch (SyntaxError e) {
+            recover(e, start);
+        }
+        program(); // throws, since there are errors
+        return null;
     }
 
-    private void statement() {
+    private int program() {
+        int[] statements = new int[16];
+        int count = 0;
+        while (!isAtEnd() && errors.size() < MAX_ERRORS) {
+            int start = current;
+            try {
+                int statement = statement();
+                statements = add(statements, count++, statement);
+            } catch (SyntaxError e) {
+                recover(e, start);
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(String.join("\n", errors));
+        }
+        return builder.block(statements, count);
+    }
+
+    private int statement() {
         //System.out.println("Parsing statement, token: " + peek());
-        if (match(Token.Type.TNI, Token.Type.ELBUOD, Token.Type.LOOB, Token.Type.RAHC)) {
-            varDeclaration();
-        } else if (match(Token.Type.PRIT)) {
-            printStatement();
-        } else if (match(Token.Type.FI)) {
-            ifStatement();
-        } else if (match(Token.Type.ROF)) {
-            forStatement();
-        } else {
-            throw new RuntimeException("Unexpected statement.");
+        int start = tokens.start(current);
+        switch (peek()) {
+            case TNI: case ELBUOD: case LOOB: case RAHC:
+                advance();
+                return varDeclaration(start);
+            case PRIT:
+                advance();
+                return printStatement(start);
+            case FI:
+                advance();
+                return ifStatement(start);
+            case ROF:
+                advance();
+                return forStatement(start);
+            default:
+                throw error("Unexpected statement.");
         }
     }
 
-    private void varDeclaration() {
+    private int varDeclaration(int start) {
         Token type = previous();
         Token name = consume(Token.Type.IDENTIFIER, "Expected variable name.");
         //System.out.println("variable declaration: type =" + type + "name=" + name.value);
 
         consume(Token.Type.EQUALS, "Expected '=' after variable name.");
-        ASTNode expr = expression();
-        //System.out.println("Variable initialization expression: " + expr);
+        int expr = expression();
         consume(Token.Type.SEMICOLON, "Expected ';' after variable declaration.");
 
-        // Evaluate the expression and store in the interpreter
-        Object value = interpreter.evaluate(expr);
-        //System.out.println("Variable assigned: " + name.value + " = " + value);
-        interpreter.assignVariable(name.value, value);
+        return builder.declaration(type, name.value, expr, start);
     }
 
-    private void printStatement() {
+    private int printStatement(int start) {
         consume(Token.Type.LPAREN, "Expected '(' after 'prit'.");
-        ASTNode expr = expression();
+        int expr = expression();
         consume(Token.Type.RPAREN, "Expected ')' after expression.");
         consume(Token.Type.SEMICOLON, "Expected ';' after print statement.");
 
-        Object result = interpreter.evaluate(expr);
-        System.out.println(result);
+        return builder.print(expr, start);
     }
 
-    private ASTNode expression() {
-        ASTNode left = term();
-
-        while (match(Token.Type.PLUS, Token.Type.MINUS)) {
-            Token operator = previous();
-            ASTNode right = term();
-            left = new BinaryOperationNode(left, operator, right);
+    /**
+     * Parses an expression by precedence climbing on explicit stacks instead of the call stack, so parentheses
+     * nest as deep as the input does. An operator waits on the stack until its right operand is followed by an
+     * operator that binds no tighter, or by the end of the expression; a '(' waits for its ')'.
+     *
+     * A run of one ro or dna operator becomes a balanced tree. Both are associative and short-circuit
+     * evaluation visits the operands left to right however the run is grouped, so a run of n operands nests
+     * log2(n) deep instead of n. Operands are joined as they arrive, like the carries of a binary counter: two
+     * pending subtrees of the same size become one, so the builder only ever joins its two newest nodes, and the
+     * subtrees still pending at the end of the run are joined right to left.
+     */
+    private int expression() {
+        int operandCount = 0;
+        int operatorCount = 0;
+        while (true) {
+            while (match(Token.Type.LPAREN)) {
+                operatorCount = pushOperator(operatorCount, null, 0, 0, 0);
+            }
+            operandCount = pushOperand(operandCount, factor());
+            // The operand is complete: finish what waits for it, then go on with what follows it.
+            while (true) {
+                Token.Type type = peek();
+                int precedence = PRECEDENCE[type.ordinal()];
+                boolean runGoesOn = false;
+                while (operatorCount > 0 && operatorPrecedences[operatorCount - 1] >= Math.max(precedence, 1)) {
+                    Token operator = operators[operatorCount - 1];
+                    if (operator.type == Token.Type.OR || operator.type == Token.Type.AND) {
+                        runGoesOn = type == operator.type;
+                        operandCount = joinRun(operatorCount - 1, operandCount, runGoesOn);
+                        if (runGoesOn) {
+                            break;
+                        }
+                    } else {
+                        operandCount = join(operandCount, operator, operatorStarts[operatorCount - 1]);
+                    }
+                    operatorCount--;
+                }
+                if (precedence > 0) {
+                    advance();
+                    if (runGoesOn) {
+                        operatorStarts[operatorCount - 1] = tokens.start(current - 1);
+                    } else {
+                        operandSizes[operandCount - 1] = 1;
+                        operatorCount = pushOperator(operatorCount, previous(), precedence,
+                                tokens.start(current - 1), operandCount - 1);
+                    }
+                    break;
+                }
+                if (operatorCount == 0) {
+                    return operands[0];
+                }
+                consume(Token.Type.RPAREN, "Expected ')' after expression.");
+                operatorCount--;
+            }
         }
+    }
 
-        while (match(Token.Type.AND, Token.Type.OR)) {
-            Token operator = previous();
-            ASTNode right = term();
-            left = new BinaryOperationNode(left, operator, right);
+    /**
+     * The newest operand of the ro or dna run of operator top is complete. Joins it with the pending subtrees
+     * of its size if the run goes on, or else joins everything pending right to left.
+     */
+    private int joinRun(int top, int operandCount, boolean goesOn) {
+        operandSizes[operandCount - 1] = 1;
+        operandOperatorStarts[operandCount - 1] = operatorStarts[top];
+        while (operandCount - 1 > runStarts[top]
+                && (!goesOn || operandSizes[operandCount - 2] == operandSizes[operandCount - 1])) {
+            operandCount = join(operandCount, operators[top], operandOperatorStarts[operandCount - 1]);
+            operandSizes[operandCount - 1] += operandSizes[operandCount];
         }
+        return operandCount;
+    }
 
-        while (match(Token.Type.LESS, Token.Type.GREATER, Token.Type.LESSEQ, Token.Type.GREATEREQ, Token.Type.EQEQ, Token.Type.NOTEQ)) {
-            Token operator = previous();
-            ASTNode right = term();
-            left = new BinaryOperationNode(left, operator, right);
+    // Joins the two newest operands with operator; fails if the tree would get deeper than the limit.
+    private int join(int operandCount, Token operator, int operatorStart) {
+        int depth = Math.max(operandDepths[operandCount - 2], operandDepths[operandCount - 1]) + 1;
+        if (depth > maxExpressionDepth) {
+            throw error("Expression nested more than " + MAX_EXPRESSION_DEPTH + " deep.");
         }
-        return left;
+        operands[operandCount - 2] = builder.binary(operands[operandCount - 2], operator, operands[operandCount - 1],
+                operatorStart);
+        operandDepths[operandCount - 2] = depth;
+        return operandCount - 1;
     }
 
-    private ASTNode term() {
-        ASTNode left = factor();  // Parse the first factor
+    private int pushOperand(int count, int operand) {
+        if (count == operands.length) {
+            operands = Arrays.copyOf(operands, count * 2);
+            operandDepths = Arrays.copyOf(operandDepths, count * 2);
+            operandSizes = Arrays.copyOf(operandSizes, count * 2);
+            operandOperatorStarts = Arrays.copyOf(operandOperatorStarts, count * 2);
+        }
+        operands[count] = operand;
+        operandDepths[count] = 1;
+        return count + 1;
+    }
 
-        while (match(Token.Type.STAR, Token.Type.SLASH)) {
-            Token operator = previous();
-            ASTNode right = factor();  // Parse the next factor
-            left = new BinaryOperationNode(left, operator, right); // Combine into AST
+    // A '(' is pushed with a null operator and precedence 0, so only its ')' takes it off.
+    private int pushOperator(int count, Token operator, int precedence, int start, int runStart) {
+        if (count == operators.length) {
+            operators = Arrays.copyOf(operators, count * 2);
+            operatorPrecedences = Arrays.copyOf(operatorPrecedences, count * 2);
+            operatorStarts = Arrays.copyOf(operatorStarts, count * 2);
+            runStarts = Arrays.copyOf(runStarts, count * 2);
         }
-        return left;
+        operators[count] = operator;
+        operatorPrecedences[count] = precedence;
+        operatorStarts[count] = start;
+        runStarts[count] = runStart;
+        return count + 1;
     }
 
-    private ASTNode factor() {
+    private int factor() {
         if (match(Token.Type.NUMBER)) {
-            return new LiteralNode(previous().value);
+            return builder.literal(tokens.text(current - 1));
         } else if (match(Token.Type.CHAR_LITERAL)) {
-            //System.out.println("Parsing character literal: " + previous().value);
-            return new LiteralNode(previous().value);
+            //System.out.println("Parsing character literal: " + tokens.text(current - 1));
+            return builder.literal(tokens.text(current - 1));
         } else if (match(Token.Type.IDENTIFIER)) {
-            return new VariableNode(previous().value);
+            return builder.variable(tokens.text(current - 1));
         } else if (match(Token.Type.TRUE)) {
-            return new LiteralNode("eurt");
+            return builder.literal("eurt");
         } else if (match(Token.Type.FALSE)) {
-            return new LiteralNode("eslaf");
-        } else if (match(Token.Type.LPAREN)) {
-            ASTNode expr = expression();
-            consume(Token.Type.RPAREN, "Expected ')' after expression.");
-            return expr;
+            return builder.literal("eslaf");
         }
-        throw new RuntimeException("Expected a number, variable, or expression.");
+        throw error("Expected a number, variable, or expression.");
     }
 
     private Token consume(Token.Type type, String errorMessage) {
-        if (peek().type == type) return advance();
-        throw new RuntimeException(errorMessage);
+        if (peek() == type) {
+            advance();
+            return previous();
+        }
+        throw error(errorMessage);
     }
 
-    private void ifStatement() {
+    private int ifStatement(int start) {
 
         consume(Token.Type.LPAREN, "Expected '(' after 'fi'.");
 
-        ASTNode condition = expression();
+        int condition = expression();
 
         consume(Token.Type.RPAREN, "Expected ')' after condition.");
 
         consume(Token.Type.LBRACE, "Expected '{' before 'if' block.");
+        int thenBranch = block("Expected '}' after 'if' block.");
+
+        int elseBranch = -1;
+        if (match(Token.Type.ESLE)) {
+            consume(Token.Type.LBRACE, "Expected '{' before 'else' block.");
+            elseBranch = block("Expected '}' after 'else' block.");
+        }
+
+        return builder.ifStatement(condition, thenBranch, elseBranch, start);
+    }
+
+    private int block(String errorMessage) {
+        if (blockDepth == MAX_BLOCK_DEPTH) {
+            SyntaxError error = error("Blocks nested more than " + MAX_BLOCK_DEPTH + " deep.");
+            skipBlock();
+            throw error;
+        }
+        blockDepth++;
+        try {
+            return blockStatements(errorMessage);
+        } finally {
+            blockDepth--;
+        }
+    }
 
-        if ((boolean) interpreter.evaluate(condition)) {
-            while (!check(Token.Type.RBRACE) && !isAtEnd()) {
-                statement();
+    private int blockStatements(String errorMessage) {
+        int[] statements = new int[8];
+        int count = 0;
+        while (!check(Token.Type.RBRACE) && !isAtEnd()) {
+            int start = current;
+            try {
+                int statement = statement();
+                statements = add(statements, count++, statement);
+            } catch (SyntaxError e) {
+                if (errors.size() + 1 >= MAX_ERRORS) {
+                    throw e;
+                }
+                recover(e, start);
             }
-        } else {
-            while (!check(Token.Type.RBRACE) && !isAtEnd()) {
+        }
+        consume(Token.Type.RBRACE, errorMessage);
+        return builder.block(statements, count);
+    }
+
+    // Skips the rest of a block whose '{' has been consumed, up to and including its matching '}'.
+    private void skipBlock() {
+        int open = 1;
+        while (!isAtEnd()) {
+            if (peek() == Token.Type.LBRACE) {
+                open++;
+            } else if (peek() == Token.Type.RBRACE && --open == 0) {
                 advance();
+                return;
             }
+            advance();
         }
-        consume(Token.Type.RBRACE, "Expected '}' after 'if' block.");
+    }
 
+    private static int[] add(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, index * 2);
+        }
+        array[index] = value;
+        return array;
+    }
 
-        if (match(Token.Type.ESLE)) {
-            consume(Token.Type.LBRACE, "Expected '{' before 'else' block.");
+    private SyntaxError error(String message) {
+        if (lines == null) {
+            lines = new LineIndex(tokens.source());
+        }
+        return new SyntaxError(message + " (" + lines.describe(tokens.start(current)) + ")");
+    }
 
-            if (!(boolean) interpreter.evaluate(condition)) {
-                while (!check(Token.Type.RBRACE) && !isAtEnd()) {
-                    statement();
-                }
-            } else {
-                while (!check(Token.Type.RBRACE) && !isAtEnd()) {
+    /**
+     * Records the error and skips the rest of the statement that started at token index start: past its ';',
+     * or up to the next statement keyword or '}'. At least one token is skipped so parsing always moves on.
+     */
+    private void recover(SyntaxError error, int start) {
+        errors.add(error.getMessage());
+        if (current == start) {
+            advance();
+        }
+        while (!isAtEnd()) {
+            if (tokens.type(current - 1) == Token.Type.SEMICOLON && current > start) {
+                return;
+            }
+            switch (peek()) {
+                case TNI: case ELBUOD: case LOOB: case RAHC: case PRIT: case FI: case ROF: case RBRACE:
+                    return;
+                default:
                     advance();
-                }
             }
-
-            consume(Token.Type.RBRACE, "Expected '}' after 'else' block.");
         }
-
     }
 
     private boolean check(Token.Type type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return peek() == type;
     }
 
 
-    private void forStatement() {
+    private int forStatement(int start) {
         consume(Token.Type.LPAREN, "Expected '(' after 'rof'.");
 
-        ASTNode iterationsExpr = expression();
+        int iterationsExpr = expression();
         consume(Token.Type.RPAREN, "Expected ')' after number.");
         consume(Token.Type.LBRACE, "Expected '{' before 'rof' block.");
 
-        Object iterationsValue = interpreter.evaluate(iterationsExpr);
-        if (!(iterationsValue instanceof Integer)) {
-            throw new RuntimeException("Expected an integer for 'rof' iterations.");
-        }
-        int iterations = (int) iterationsValue;
-
-        int blockStart = current;
-
-        for (int i = 0; i < iterations; i++) {
-            current = blockStart;
-            while (!check(Token.Type.RBRACE) && !isAtEnd()) {
-                statement();
-            }
-
-            consume(Token.Type.RBRACE, "Expected '}' after 'rof' block.");
-        }
+        int body = block("Expected '}' after 'rof' block.");
+        return builder.loop(iterationsExpr, body, start);
     }
 }
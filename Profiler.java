@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts and times what a ProfilingInterpreter runs (--profile). Every statement and operator gets a frame
+ * under the frame that was running when it started, so the frames form the program's nesting tree; a loop
+ * frame also counts its iterations. Compile phases are timed separately.
+ *
+ * Times come from System.nanoTime around each frame and include the cost of reading the clock, which
+ * dominates for cheap operators; compare counts and relative times rather than absolute ones.
+ */
+class Profiler {
+    private static final class Frame {
+        final ASTNode node; // null for the root
+        final Frame parent;
+        final LinkedHashMap<ASTNode, Frame> children = new LinkedHashMap<>(); // nodes compare by identity
+        long count;
+        long iterations;
+        long totalNanos;
+        long childNanos;
+        long start;
+
+        Frame(ASTNode node, Frame parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+    }
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Frame root = new Frame(null, null);
+    private Frame current = root;
+
+    /** Records a compile phase that started at the given System.nanoTime and returns the time now. */
+    long phase(String name, long start) {
+        long now = System.nanoTime();
+        phases.merge(name, now - start, Long::sum);
+        return now;
+    }
+
+    /** Starts a frame for node under the current one; every enter is matched by an exit. */
+    void enter(ASTNode node) {
+        Frame frame = current.children.get(node);
+        if (frame == null) {
+            frame = new Frame(node, current);
+            current.children.put(node, frame);
+        }
+        frame.count++;
+        current = frame;
+        frame.start = System.nanoTime();
+    }
+
+    void exit() {
+        Frame frame = current;
+        long elapsed = System.nanoTime() - frame.start;
+        frame.totalNanos += elapsed;
+        frame.parent.childNanos += elapsed;
+        current = frame.parent;
+    }
+
+    /** True if the innermost open frame is node's, e.g. when evaluate hands a node on to evalInt. */
+    boolean isCurrent(ASTNode node) {
+        return current.node == node;
+    }
+
+    /** Counts one run of the body of the innermost open frame, if that frame is a loop. */
+    void iteration() {
+        if (current.node instanceof LoopNode) {
+            current.iterations++;
+        }
+    }
+
+    /**
+     * Prints phase times, then statements and loops by self time, then operators by Token.Type.
+     * @param source the text the Parser read, for turning offsets into line:column
+     */
+    void printFlat(PrintStream out, String fileName, CharSequence source) {
+        LineIndex lines = new LineIndex(source);
+        List<Frame> frames = new ArrayList<>();
+        collect(root, frames);
+        frames.sort((a, b) -> Long.compare(self(b), self(a)));
+
+        out.println("Profile of " + fileName);
+        out.println("Phases:");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            out.printf("  %-14s %12.3f ms%n", phase.getKey(), phase.getValue() / 1e6);
+        }
+        out.println("Statements (by self time):");
+        out.printf("  %12s %12s %12s  %s%n", "count", "total ms", "self ms", "statement");
+        for (Frame frame : frames) {
+            if (!(frame.node instanceof BinaryOperationNode)) {
+                out.printf("  %12d %12.3f %12.3f  %s%n", frame.count, frame.totalNanos / 1e6, self(frame) / 1e6,
+                        label(frame.node, lines));
+            }
+        }
+        out.println("Loops:");
+        out.printf("  %12s %12s %12s  %s%n", "runs", "iterations", "total ms", "loop");
+        for (Frame frame : frames) {
+            if (frame.node instanceof LoopNode) {
+                out.printf("  %12d %12d %12.3f  %s%n", frame.count, frame.iterations, frame.totalNanos / 1e6,
+                        label(frame.node, lines));
+            }
+        }
+        EnumMap<Token.Type, long[]> operators = new EnumMap<>(Token.Type.class);
+        for (Frame frame : frames) {
+            if (frame.node instanceof BinaryOperationNode) {
+                long[] totals = operators.computeIfAbsent(((BinaryOperationNode) frame.node).operator.type, type -> new long[2]);
+                totals[0] += frame.count;
+                totals[1] += self(frame);
+            }
+        }
+        out.println("Operators (by Token.Type):");
+        out.printf("  %12s %12s  %s%n", "count", "self ms", "operator");
+        operators.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+                .forEach(entry -> out.printf("  %12d %12.3f  %s%n", entry.getValue()[0], entry.getValue()[1] / 1e6, entry.getKey()));
+    }
+
+    /**
+     * Writes one line per frame in the collapsed-stack format flame graph tools read: the frames from the
+     * outermost in, separated by ';', then the frame's self time in nanoseconds.
+     */
+    void writeCollapsed(Path file, CharSequence source) throws IOException {
+        LineIndex lines = new LineIndex(source);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                out.write(phase.getKey().replace(' ', '_') + " " + phase.getValue() + "\n");
+            }
+            for (Frame frame : root.children.values()) {
+                writeCollapsed(out, frame, "execute", lines);
+            }
+        }
+    }
+
+    private void writeCollapsed(Writer out, Frame frame, String stack, LineIndex lines) throws IOException {
+        String path = stack + ";" + label(frame.node, lines).replace(';', ',');
+        out.write(path + " " + self(frame) + "\n");
+        for (Frame child : frame.children.values()) {
+            writeCollapsed(out, child, path, lines);
+        }
+    }
+
+    private static void collect(Frame frame, List<Frame> frames) {
+        for (Frame child : frame.children.values()) {
+            frames.add(child);
+            collect(child, frames);
+        }
+    }
+
+    private static long self(Frame frame) {
+        return Math.max(0, frame.totalNanos - frame.childNanos);
+    }
+
+    private static String label(ASTNode node, LineIndex lines) {
+        String where = node.position >= 0 ? " " + lines.line(node.position) + ":" + lines.column(node.position) : "";
+        if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            return declaration.type.value + " " + declaration.name + where;
+        } else if (node instanceof PrintNode) {
+            return "prit" + where;
+        } else if (node instanceof IfNode) {
+            return "fi" + where;
+        } else if (node instanceof LoopNode) {
+            return "rof" + where;
+        } else if (node instanceof BinaryOperationNode) {
+            return Optimizer.operatorText(((BinaryOperationNode) node).operator) + where;
+        }
+        return node.getClass().getSimpleName() + where;
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.List;
+
+/**
+ * An Interpreter that reports every statement, operator and loop iteration to a Profiler. It is a subclass
+ * so that the plain Interpreter carries no checks at all: unless --profile is given this class is never
+ * loaded, and the JIT still sees a single implementation of every Interpreter method.
+ */
+class ProfilingInterpreter extends Interpreter {
+    private final Profiler profiler;
+
+    ProfilingInterpreter(List<String> slotNames, ValueType[] slotTypes, OutputSink out, Profiler profiler) {
+        super(slotNames, slotTypes, out);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void execute(ASTNode node) {
+        if (node instanceof BlockNode) {
+            profiler.iteration();
+            super.execute(node);
+            return;
+        }
+        profiler.enter(node);
+        try {
+            super.execute(node);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    public Object evaluate(ASTNode node) {
+        if (!(node instanceof BinaryOperationNode) || profiler.isCurrent(node)) {
+            return super.evaluate(node);
+        }
+        profiler.enter(node);
+        try {
+            return super.evaluate(node);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    int evalInt(ASTNode node) {
+        if (!(node instanceof BinaryOperationNode) || profiler.isCurrent(node)) {
+            return super.evalInt(node);
+        }
+        profiler.enter(node);
+        try {
+            return super.evalInt(node);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    double evalDouble(ASTNode node) {
+        if (!(node instanceof BinaryOperationNode) || profiler.isCurrent(node)) {
+            return super.evalDouble(node);
+        }
+        profiler.enter(node);
+        try {
+            return super.evalDouble(node);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    @Override
+    boolean evalBoolean(ASTNode node) {
+        if (!(node instanceof BinaryOperationNode) || profiler.isCurrent(node)) {
+            return super.evalBoolean(node);
+        }
+        profiler.enter(node);
+        try {
+            return super.evalBoolean(node);
+        } finally {
+            profiler.exit();
+        }
+    }
+}
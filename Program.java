@@ -0,0 +1,76 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/** The goofyahh.Program an Engine compiles. Immutable: every run gets a fresh frame and output buffer. */
+final class Program implements goofyahh.Program {
+    private final List<String> parameters;
+    // Exactly one of the two forms is set, depending on the Engine's backend.
+    private final List<String> slotNames;
+    private final ValueType[] slotTypes;
+    private final BlockNode tree;
+    private final Bytecode bytecode;
+
+    Program(List<String> parameters, List<String> slotNames, ValueType[] slotTypes, BlockNode tree) {
+        this.parameters = parameters;
+        this.slotNames = slotNames;
+        this.slotTypes = slotTypes;
+        this.tree = tree;
+        this.bytecode = null;
+    }
+
+    Program(List<String> parameters, Bytecode bytecode) {
+        this.parameters = parameters;
+        this.slotNames = null;
+        this.slotTypes = null;
+        this.tree = null;
+        this.bytecode = bytecode;
+    }
+
+    @Override
+    public List<String> parameters() {
+        return parameters;
+    }
+
+    @Override
+    public void run(Map<String, ?> bindings, PrintStream output) {
+        Object[] bound = bind(bindings);
+        OutputSink out = new OutputSink(output, OutputSink.FlushPolicy.SIZE);
+        try {
+            if (bytecode != null) {
+                new VirtualMachine(out).run(bytecode, bound);
+            } else {
+                Interpreter interpreter = new Interpreter(slotNames, slotTypes, out);
+                for (int slot = 0; slot < bound.length; slot++) {
+                    interpreter.bind(slot, bound[slot]);
+                }
+                interpreter.execute(tree);
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Runtime error: " + e.getMessage(), e);
+        } finally {
+            out.flush();
+        }
+    }
+
+    private Object[] bind(Map<String, ?> bindings) {
+        for (String name : bindings.keySet()) {
+            if (!parameters.contains(name)) {
+                throw new IllegalArgumentException("Not a parameter: " + name);
+            }
+        }
+        Object[] bound = new Object[parameters.size()];
+        for (int slot = 0; slot < bound.length; slot++) {
+            String name = parameters.get(slot);
+            Object value = bindings.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for parameter: " + name);
+            }
+            if (!(value instanceof Integer || value instanceof Double || value instanceof Boolean || value instanceof Character)) {
+                throw new IllegalArgumentException("Unsupported value for " + name + ": " + value.getClass().getName());
+            }
+            bound[slot] = value;
+        }
+        return bound;
+    }
+}
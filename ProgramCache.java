@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed programs keyed by the SHA-256 of their source, so an unchanged script skips lexing and parsing.
+ * Entries are AstCodec bytes, held in an in-memory LRU bounded by their total size and written to one file
+ * per key in the cache directory. Each hit decodes a fresh tree, since the Resolver and Optimizer rewrite
+ * the tree they are given.
+ *
+ * The cache is best effort: an entry that cannot be read, is truncated or comes from another format version
+ * counts as a miss and is replaced, and failures to write are ignored. Safe to use from several threads.
+ */
+class ProgramCache {
+    static final long DEFAULT_MEMORY_BYTES = 64L << 20;
+    private static final String SUFFIX = ".goofyc";
+
+    private final Path directory; // null keeps entries in memory only
+    private final long maxMemoryBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+
+    ProgramCache(Path directory, long maxMemoryBytes) {
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /** The key for a source: SHA-256 of the file's bytes, as hex. */
+    static String key(CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK provides SHA-256
+        }
+        if (source instanceof MappedSource) {
+            digest.update(((MappedSource) source).bytes());
+        } else {
+            digest.update(source.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /** A freshly decoded copy of the program stored under key, or null on a miss. */
+    BlockNode get(String key) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = entries.get(key);
+        }
+        if (bytes != null) {
+            return AstCodec.decode(bytes);
+        }
+        if (directory == null) {
+            return null;
+        }
+        try {
+            bytes = Files.readAllBytes(directory.resolve(key + SUFFIX));
+        } catch (IOException e) {
+            return null;
+        }
+        BlockNode program = AstCodec.decode(bytes);
+        if (program != null) {
+            remember(key, bytes);
+        }
+        return program;
+    }
+
+    /** Stores a program as it came from the Parser; call before resolving it. */
+    void put(String key, BlockNode program) {
+        byte[] bytes = AstCodec.encode(program);
+        remember(key, bytes);
+        if (directory == null) {
+            return;
+        }
+        // Written under a temporary name and moved into place, so readers never see a partial entry.
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, directory.resolve(key + SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Nothing more to clean up.
+                }
+            }
+        }
+    }
+
+    private synchronized void remember(String key, byte[] bytes) {
+        if (bytes.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, bytes);
+        memoryBytes += bytes.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Binds every variable to a numeric frame slot before execution and rewrites VariableNodes into SlotNodes,
+ * ro/dna into LogicalNodes and comparisons into ComparisonNodes.
+ * All scopes are global, so a name keeps the same slot across redeclarations. Reads of names that are never
+ * declared before them fail here; reads of names declared only on some paths (inside a fi branch or a rof
+ * body) stay checked at run time.
+ */
+class Resolver {
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private final List<String> slotNames = new ArrayList<>();
+    private BitSet defined = new BitSet();
+
+    public void resolve(BlockNode program) {
+        resolveStatement(program);
+    }
+
+    /**
+     * Declares a variable that is set before the program runs, such as an Engine parameter. Call before
+     * resolve; the first names declared get the first slots.
+     */
+    public int declare(String name) {
+        int slot = slotFor(name);
+        defined.set(slot);
+        return slot;
+    }
+
+    /** Variable names indexed by slot; its size is the frame size. */
+    public List<String> slotNames() {
+        return slotNames;
+    }
+
+    private void resolveStatement(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                resolveStatement(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            VarDeclarationNode declaration = (VarDeclarationNode) node;
+            declaration.initializer = resolveExpression(declaration.initializer);
+            declaration.slot = slotFor(declaration.name);
+            defined.set(declaration.slot);
+        } else if (node instanceof PrintNode) {
+            PrintNode print = (PrintNode) node;
+            print.expression = resolveExpression(print.expression);
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            ifNode.condition = resolveExpression(ifNode.condition);
+            BitSet before = (BitSet) defined.clone();
+            resolveStatement(ifNode.thenBranch);
+            BitSet afterThen = defined;
+            defined = (BitSet) before.clone();
+            if (ifNode.elseBranch != null) {
+                resolveStatement(ifNode.elseBranch);
+            }
+            defined.and(afterThen);
+        } else if (node instanceof LoopNode) {
+            LoopNode loop = (LoopNode) node;
+            loop.iterations = resolveExpression(loop.iterations);
+            // A later iteration can read what an earlier one declared further down the body.
+            declareAll(loop.body);
+            BitSet before = (BitSet) defined.clone();
+            resolveStatement(loop.body);
+            defined = before;
+        } else {
+            throw new RuntimeException("Unknown statement type");
+        }
+    }
+
+    private ASTNode resolveExpression(ASTNode node) {
+        if (node instanceof VariableNode) {
+            String name = ((VariableNode) node).name;
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                throw new RuntimeException("Undefined variable: " + name);
+            }
+            return new SlotNode(name, slot, !defined.get(slot));
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            binaryNode.left = resolveExpression(binaryNode.left);
+            binaryNode.right = resolveExpression(binaryNode.right);
+            switch (binaryNode.operator.type) {
+                case OR:
+                case AND:
+                    return new LogicalNode(binaryNode);
+                case LESS:
+                case GREATER:
+                case LESSEQ:
+                case GREATEREQ:
+                case EQEQ:
+                case NOTEQ:
+                    return new ComparisonNode(binaryNode);
+            }
+        }
+        return node;
+    }
+
+    private void declareAll(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                declareAll(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            slotFor(((VarDeclarationNode) node).name);
+        } else if (node instanceof IfNode) {
+            declareAll(((IfNode) node).thenBranch);
+            if (((IfNode) node).elseBranch != null) {
+                declareAll(((IfNode) node).elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            declareAll(((LoopNode) node).body);
+        }
+    }
+
+    private int slotFor(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slotNames.size();
+            slots.put(name, slot);
+            slotNames.add(name);
+        }
+        return slot;
+    }
+}
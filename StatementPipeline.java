@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a program while it is still being lexed. A lexer thread fills a bounded queue with chunks of tokens;
+ * the calling thread parses, resolves and interprets one top-level statement at a time as soon as its tokens
+ * arrive, so output starts before the end of the file has been read.
+ *
+ * Execution stops at the first error in program order and reports it with the same message the sequential
+ * mode uses; a syntax error is reported together with every later one, as the sequential mode lists them.
+ * Statements before the error have already run by then. Slot types are not known until the whole
+ * program has been seen, so every value is boxed.
+ */
+class StatementPipeline implements TokenBuffer.Source {
+    private static final int CHUNK_TOKENS = 4096;
+    private static final int QUEUE_CHUNKS = 16;
+
+    private static final class Chunk {
+        final TokenBuffer tokens;
+        final boolean last;
+        final CharSequence decoded;
+        final RuntimeException error;
+
+        Chunk(TokenBuffer tokens, boolean last, CharSequence decoded, RuntimeException error) {
+            this.tokens = tokens;
+            this.last = last;
+            this.decoded = decoded;
+            this.error = error;
+        }
+    }
+
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+    private final String fileName;
+    private final CharSequence source;
+    private final Lexer.Mode lexerMode;
+    private final OutputSink out;
+    private TokenBuffer tokens;
+
+    /**
+     * @param source the file's text, usually a MappedSource
+     * @param out where prit writes; the caller flushes it
+     */
+    StatementPipeline(String fileName, CharSequence source, Lexer.Mode lexerMode, OutputSink out) {
+        this.fileName = fileName;
+        this.source = source;
+        this.lexerMode = lexerMode;
+        this.out = out;
+    }
+
+    /** Runs the program; errors come back with the prefix the sequential mode prints. */
+    void run() {
+        Thread lexerThread = new Thread(this::lex, "goofy-lexer");
+        lexerThread.setDaemon(true);
+        lexerThread.start();
+        try {
+            tokens = new TokenBuffer(source, this);
+            Parser parser = new Parser(tokens);
+            Resolver resolver = new Resolver();
+            Interpreter interpreter = new Interpreter(resolver.slotNames(), new ValueType[0], out);
+            while (true) {
+                ASTNode statement;
+                try {
+                    statement = parser.nextStatement();
+                } catch (RuntimeException e) {
+                    // As in the sequential mode, a lexing error anywhere in the file wins over syntax errors.
+                    if (!tokens.failed()) {
+                        try {
+                            tokens.drain();
+                        } catch (RuntimeException lexingError) {
+                            e = lexingError;
+                        }
+                    }
+                    if (tokens.failed()) {
+                        throw e.getMessage() != null && e.getMessage().startsWith("Error reading file: ")
+                                ? e : new RuntimeException("Lexing error: " + e.getMessage());
+                    }
+                    throw new RuntimeException("Parsing error: " + e.getMessage().replace("\n", "\nParsing error: "));
+                }
+                if (statement == null) {
+                    return;
+                }
+                BlockNode block = new BlockNode(Collections.singletonList(statement));
+                try {
+                    resolver.resolve(block);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Resolve error: " + e.getMessage());
+                }
+                interpreter.growFrame();
+                try {
+                    interpreter.execute(block);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Runtime error: " + e.getMessage());
+                }
+            }
+        } finally {
+            lexerThread.interrupt();
+        }
+    }
+
+    /** Called by the parser's TokenBuffer: copies the next chunk from the lexer thread into it. */
+    @Override
+    public boolean next(TokenBuffer into) {
+        Chunk chunk;
+        try {
+            chunk = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tokens", e);
+        }
+        if (chunk.decoded != null) {
+            into.source(chunk.decoded);
+        }
+        if (chunk.error != null) {
+            throw chunk.error;
+        }
+        for (int i = 0; i < chunk.tokens.size(); i++) {
+            into.add(chunk.tokens.type(i), chunk.tokens.start(i), chunk.tokens.length(i));
+        }
+        return !chunk.last;
+    }
+
+    // Lexer thread. A MappedSource is only the file's text while it is ASCII; at the first other byte the
+    // file is decoded and lexing resumes from the same offset, which the ASCII prefix keeps valid.
+    private void lex() {
+        CharSequence text = source;
+        Lexer lexer = new Lexer(text, lexerMode);
+        CharSequence decoded = null;
+        try {
+            boolean more = true;
+            while (more) {
+                int chunkStart = lexer.position();
+                TokenBuffer chunk = new TokenBuffer(text, null, CHUNK_TOKENS);
+                RuntimeException error = null;
+                try {
+                    while (more && chunk.size() < CHUNK_TOKENS) {
+                        more = lexer.next(chunk);
+                    }
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                if (text instanceof MappedSource && ((MappedSource) text).sawNonAscii()) {
+                    try {
+                        text = Files.readString(Paths.get(fileName));
+                    } catch (IOException e) {
+                        queue.put(new Chunk(null, true, null, new RuntimeException("Error reading file: " + e.getMessage())));
+                        return;
+                    }
+                    decoded = text;
+                    lexer = new Lexer(text, lexerMode, chunkStart);
+                    more = true;
+                    continue;
+                }
+                queue.put(new Chunk(chunk, !more, decoded, error));
+                decoded = null;
+                if (error != null) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The consumer stopped; nothing is waiting for more tokens.
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays token storage: one byte for the type and a start/length pair into the source per token.
+ * Lexeme strings are only created for identifiers and literals, and only when the parser asks for them.
+ */
+class TokenBuffer {
+    private static final Token.Type[] TYPES = Token.Type.values();
+    // Small on purpose: a whole-file buffer doubles as the lexer fills it, and a streaming one compacts.
+    private static final int INITIAL_CAPACITY = 256;
+    // Canonical lexeme and shared Token instance for every type whose text never varies (null otherwise).
+    private static final String[] FIXED_TEXT = new String[TYPES.length];
+    private static final Token[] FIXED_TOKENS = new Token[TYPES.length];
+
+    static {
+        String[][] fixed = {
+                {"TNI", "tni"}, {"ELBUOD", "elbuod"}, {"LOOB", "loob"}, {"RAHC", "rahc"},
+                {"PRIT", "prit"}, {"FI", "fi"}, {"ESLE", "esle"}, {"ROF", "rof"},
+                {"TRUE", "eurt"}, {"FALSE", "eslaf"}, {"OR", "or"}, {"AND", "and"},
+                {"EQUALS", "="}, {"PLUS", "+"}, {"MINUS", "-"}, {"STAR", "*"}, {"SLASH", "/"},
+                {"LPAREN", "("}, {"RPAREN", ")"}, {"LBRACE", "{"}, {"RBRACE", "}"},
+                {"SEMICOLON", ";"}, {"COMMA", ","},
+                {"LESS", "<"}, {"GREATER", ">"}, {"LESSEQ", "<="}, {"GREATEREQ", ">="},
+                {"EQEQ", "=="}, {"NOTEQ", "!="}
+        };
+        for (String[] entry : fixed) {
+            Token.Type type = Token.Type.valueOf(entry[0]);
+            FIXED_TEXT[type.ordinal()] = entry[1];
+            FIXED_TOKENS[type.ordinal()] = new Token(type, entry[1]);
+        }
+        FIXED_TOKENS[Token.Type.EOF.ordinal()] = new Token(Token.Type.EOF, null);
+    }
+
+    /** The shared Token for a keyword or symbol, or null for types whose text varies. */
+    static Token fixedToken(Token.Type type) {
+        return FIXED_TOKENS[type.ordinal()];
+    }
+
+    /** Where a streaming buffer gets its tokens from. */
+    interface Source {
+        /** Appends one or more tokens to the buffer; returns false once EOF has been appended. */
+        boolean next(TokenBuffer tokens);
+    }
+
+    private CharSequence source;
+    // Set for a streaming buffer: the producer appends tokens as they are read, and entries before
+    // 'released' are dropped when the arrays fill up. 'base' is the index of the first entry kept.
+    private final Source producer;
+    private boolean finished;
+    private boolean failed;
+    private int base = 0;
+    private int released = 0;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+
+    TokenBuffer(CharSequence source) {
+        this(source, null, INITIAL_CAPACITY);
+    }
+
+    TokenBuffer(CharSequence source, Source producer) {
+        this(source, producer, INITIAL_CAPACITY);
+    }
+
+    TokenBuffer(CharSequence source, Source producer, int capacity) {
+        this.source = source;
+        this.producer = producer;
+        this.finished = producer == null;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    void add(Token.Type type, int start, int length) {
+        if (size == types.length) {
+            int drop = released - base;
+            if (drop > 0) {
+                System.arraycopy(types, drop, types, 0, size - drop);
+                System.arraycopy(starts, drop, starts, 0, size - drop);
+                System.arraycopy(lengths, drop, lengths, 0, size - drop);
+                base = released;
+                size -= drop;
+            } else {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /** Number of tokens lexed so far, including released ones. */
+    int size() {
+        return base + size;
+    }
+
+    /** Tells a streaming buffer that tokens before index will not be read again. */
+    void release(int index) {
+        if (index > released) {
+            released = index;
+        }
+    }
+
+    /** The text token starts and lengths refer to. */
+    CharSequence source() {
+        return source;
+    }
+
+    /**
+     * Replaces the text that token offsets point into. The new text must agree with the old one at every
+     * token already in the buffer.
+     */
+    void source(CharSequence source) {
+        this.source = source;
+    }
+
+    /** True if the lexer failed while filling a streaming buffer; the parser saw its exception. */
+    boolean failed() {
+        return failed;
+    }
+
+    /** Lexes the rest of a streaming buffer's input without keeping the tokens, to surface lexing errors. */
+    void drain() {
+        while (!finished) {
+            release(base + size);
+            pull();
+        }
+    }
+
+    Token.Type type(int index) {
+        return TYPES[types[slot(index)]];
+    }
+
+    int start(int index) {
+        return starts[slot(index)];
+    }
+
+    int length(int index) {
+        return lengths[slot(index)];
+    }
+
+    /** The token's value as Token.value would hold it; only identifiers and literals allocate. */
+    String text(int index) {
+        int slot = slot(index);
+        String fixed = FIXED_TEXT[types[slot]];
+        if (fixed != null || types[slot] == Token.Type.EOF.ordinal()) {
+            return fixed;
+        }
+        return source.subSequence(starts[slot], starts[slot] + lengths[slot]).toString();
+    }
+
+    private int slot(int index) {
+        int slot = index - base;
+        while (slot >= size && !finished) {
+            pull();
+            slot = index - base;
+        }
+        return slot;
+    }
+
+    private void pull() {
+        try {
+            finished = !producer.next(this);
+        } catch (RuntimeException e) {
+            failed = true;
+            finished = true;
+            throw e;
+        }
+    }
+
+    /** A Token view of one entry; fixed symbols and keywords share a single instance per type. */
+    Token token(int index) {
+        Token fixed = FIXED_TOKENS[types[slot(index)]];
+        return fixed != null ? fixed : new Token(type(index), text(index));
+    }
+
+    List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = base; i < base + size; i++) {
+            tokens.add(token(i));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Works out which slots and expressions have a single static type so the Interpreter can run them unboxed.
+ * A slot is typed when every declaration of it uses the same tni/elbuod/loob keyword, every initializer
+ * produces exactly that type and no read of it needs an undefined check. Everything else stays UNKNOWN
+ * and keeps the boxed semantics, so typing never changes what a program prints.
+ */
+class TypeAnalyzer {
+    private final List<VarDeclarationNode> declarations = new ArrayList<>();
+    private final List<ASTNode> expressions = new ArrayList<>();
+    private ValueType[] slotTypes;
+
+    /** Annotates the resolved program and returns the storage type of every slot. */
+    public ValueType[] analyze(BlockNode program, int slotCount) {
+        return analyze(program, slotCount, 0);
+    }
+
+    /** As analyze, with the first boundSlots slots set from outside the program, which keeps them boxed. */
+    public ValueType[] analyze(BlockNode program, int slotCount, int boundSlots) {
+        slotTypes = new ValueType[slotCount];
+        collect(program);
+
+        boolean[] seen = new boolean[slotCount];
+        for (VarDeclarationNode declaration : declarations) {
+            ValueType declared = ValueType.ofDeclaration(declaration.type.type);
+            if (!seen[declaration.slot]) {
+                slotTypes[declaration.slot] = declared;
+                seen[declaration.slot] = true;
+            } else if (slotTypes[declaration.slot] != declared) {
+                slotTypes[declaration.slot] = ValueType.UNKNOWN;
+            }
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!seen[slot]) {
+                slotTypes[slot] = ValueType.UNKNOWN;
+            }
+        }
+        for (int slot = 0; slot < boundSlots; slot++) {
+            slotTypes[slot] = ValueType.UNKNOWN;
+        }
+        for (ASTNode expression : expressions) {
+            if (expression instanceof SlotNode && ((SlotNode) expression).mayBeUndefined) {
+                slotTypes[((SlotNode) expression).slot] = ValueType.UNKNOWN;
+            }
+        }
+
+        // Demoting a slot can change the type of initializers that read it, so iterate to a fixed point.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (VarDeclarationNode declaration : declarations) {
+                ValueType slotType = slotTypes[declaration.slot];
+                if (slotType != ValueType.UNKNOWN && infer(declaration.initializer) != slotType) {
+                    slotTypes[declaration.slot] = ValueType.UNKNOWN;
+                    changed = true;
+                }
+            }
+        }
+
+        for (ASTNode expression : expressions) {
+            expression.valueType = infer(expression);
+            if (expression instanceof ComparisonNode) {
+                ComparisonNode comparison = (ComparisonNode) expression;
+                comparison.operandType = comparison.valueType == ValueType.UNKNOWN ? ValueType.UNKNOWN
+                        : operandType(infer(comparison.left), infer(comparison.right));
+            }
+        }
+        for (VarDeclarationNode declaration : declarations) {
+            declaration.valueType = slotTypes[declaration.slot];
+        }
+        return Arrays.copyOf(slotTypes, slotCount);
+    }
+
+    private void collect(ASTNode node) {
+        if (node instanceof BlockNode) {
+            for (ASTNode statement : ((BlockNode) node).statements) {
+                collect(statement);
+            }
+        } else if (node instanceof VarDeclarationNode) {
+            declarations.add((VarDeclarationNode) node);
+            collect(((VarDeclarationNode) node).initializer);
+        } else if (node instanceof PrintNode) {
+            collect(((PrintNode) node).expression);
+        } else if (node instanceof IfNode) {
+            IfNode ifNode = (IfNode) node;
+            collect(ifNode.condition);
+            collect(ifNode.thenBranch);
+            if (ifNode.elseBranch != null) {
+                collect(ifNode.elseBranch);
+            }
+        } else if (node instanceof LoopNode) {
+            collect(((LoopNode) node).iterations);
+            collect(((LoopNode) node).body);
+        } else if (node instanceof BinaryOperationNode) {
+            expressions.add(node);
+            collect(((BinaryOperationNode) node).left);
+            collect(((BinaryOperationNode) node).right);
+        } else {
+            expressions.add(node);
+        }
+    }
+
+    private ValueType infer(ASTNode node) {
+        if (node instanceof LiteralNode) {
+            return node.valueType; // fixed when the literal was parsed
+        } else if (node instanceof SlotNode) {
+            return slotTypes[((SlotNode) node).slot];
+        } else if (node instanceof BinaryOperationNode) {
+            BinaryOperationNode binaryNode = (BinaryOperationNode) node;
+            return binaryType(binaryNode.operator.type, infer(binaryNode.left), infer(binaryNode.right));
+        }
+        return ValueType.UNKNOWN;
+    }
+
+    /** The type a typed comparison compares in: ints as ints, an int against a double as two doubles. */
+    static ValueType operandType(ValueType left, ValueType right) {
+        return left == right ? left : ValueType.DOUBLE;
+    }
+
+    /** Result type of an operator, or UNKNOWN when the Interpreter would fail or has to decide at run time. */
+    static ValueType binaryType(Token.Type operator, ValueType left, ValueType right) {
+        switch (operator) {
+            case OR:
+            case AND:
+                return left == ValueType.BOOLEAN && right == ValueType.BOOLEAN ? ValueType.BOOLEAN : ValueType.UNKNOWN;
+            case PLUS:
+                // The Interpreter widens every sum to a double, including int + int.
+                return left.isNumeric() && right.isNumeric() ? ValueType.DOUBLE : ValueType.UNKNOWN;
+            case MINUS:
+            case STAR:
+            case SLASH:
+                if (left == ValueType.INT && right == ValueType.INT) {
+                    return ValueType.INT;
+                }
+                return left.isNumeric() && right.isNumeric() ? ValueType.DOUBLE : ValueType.UNKNOWN;
+            case LESS:
+            case GREATER:
+            case LESSEQ:
+            case GREATEREQ:
+                return left.isNumeric() && right.isNumeric() ? ValueType.BOOLEAN : ValueType.UNKNOWN;
+            case EQEQ:
+            case NOTEQ:
+                return left.isNumeric() && right.isNumeric() || left == ValueType.BOOLEAN && right == ValueType.BOOLEAN
+                        ? ValueType.BOOLEAN : ValueType.UNKNOWN;
+            default:
+                return ValueType.UNKNOWN;
+        }
+    }
+}
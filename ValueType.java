@@ -0,0 +1,35 @@
+/**
+ * Static type of an expression or a frame slot, as worked out by the TypeAnalyzer.
+ * UNKNOWN means the value is only known at run time and travels boxed.
+ */
+enum ValueType {
+    INT, DOUBLE, BOOLEAN, CHAR, UNKNOWN;
+
+    /** The type a value declared with the given type keyword is stored as, if it can live unboxed. */
+    static ValueType ofDeclaration(Token.Type declaredType) {
+        switch (declaredType) {
+            case TNI: return INT;
+            case ELBUOD: return DOUBLE;
+            case LOOB: return BOOLEAN;
+            default: return UNKNOWN;
+        }
+    }
+
+    /** The type of a boxed runtime value, UNKNOWN for null. */
+    static ValueType of(Object value) {
+        if (value instanceof Integer) {
+            return INT;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        } else if (value instanceof Character) {
+            return CHAR;
+        }
+        return UNKNOWN;
+    }
+
+    boolean isNumeric() {
+        return this == INT || this == DOUBLE;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Dispatch-loop interpreter for Bytecode. Unboxed values live on a long stack (ints as longs, doubles as raw
+ * bits, booleans as 0/1) and boxed values on a parallel Object stack sharing the same stack pointer.
+ */
+class VirtualMachine {
+    private static final Token.Type[] OPERATORS = Token.Type.values();
+
+    private final OutputSink out;
+
+    /** A VirtualMachine that prints each line to System.out as it goes. */
+    VirtualMachine() {
+        this(new OutputSink(System.out, OutputSink.FlushPolicy.LINE));
+    }
+
+    /** @param out where PRINT writes; the caller flushes it */
+    VirtualMachine(OutputSink out) {
+        this.out = out;
+    }
+
+    public void run(Bytecode program) {
+        run(program, new Object[0]);
+    }
+
+    /** Runs the program with its first slots, which must be boxed, set to bound. */
+    public void run(Bytecode program, Object[] bound) {
+        int[] code = program.code;
+        Object[] constants = program.constants;
+        long[] locals = new long[program.localCount];
+        Object[] refLocals = new Object[program.localCount];
+        System.arraycopy(bound, 0, refLocals, 0, bound.length);
+        long[] stack = new long[program.maxStack + 1];
+        Object[] refs = new Object[program.maxStack + 1];
+        int sp = -1;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+                case Opcode.ICONST: stack[++sp] = code[pc++]; break;
+                case Opcode.DCONST:
+                    stack[++sp] = ((long) code[pc] << 32) | (code[pc + 1] & 0xFFFFFFFFL);
+                    pc += 2;
+                    break;
+                case Opcode.ZCONST: stack[++sp] = code[pc++]; break;
+                case Opcode.ACONST: refs[++sp] = constants[code[pc++]]; break;
+                case Opcode.BAD_LITERAL:
+                    ConstantPool.parse((String) constants[code[pc]]); // throws the interpreter's error
+                    throw new RuntimeException("Invalid literal: " + constants[code[pc]]);
+                case Opcode.ILOAD:
+                case Opcode.DLOAD:
+                case Opcode.ZLOAD:
+                    stack[++sp] = locals[code[pc++]];
+                    break;
+                case Opcode.ALOAD: refs[++sp] = refLocals[code[pc++]]; break;
+                case Opcode.ALOAD_CHECKED: {
+                    int slot = code[pc++];
+                    if (refLocals[slot] == null) {
+                        throw new RuntimeException("Undefined variable: " + program.slotNames.get(slot));
+                    }
+                    refs[++sp] = refLocals[slot];
+                    break;
+                }
+                case Opcode.ISTORE:
+                case Opcode.DSTORE:
+                case Opcode.ZSTORE:
+                    locals[code[pc++]] = stack[sp--];
+                    break;
+                case Opcode.ASTORE:
+                    refLocals[code[pc++]] = refs[sp];
+                    refs[sp--] = null;
+                    break;
+                case Opcode.I2D: stack[sp] = Double.doubleToRawLongBits((int) stack[sp]); break;
+                case Opcode.BOX_I: refs[sp] = (int) stack[sp]; break;
+                case Opcode.BOX_D: refs[sp] = Double.longBitsToDouble(stack[sp]); break;
+                case Opcode.BOX_Z: refs[sp] = stack[sp] != 0; break;
+                case Opcode.ISUB: sp--; stack[sp] = (int) stack[sp] - (int) stack[sp + 1]; break;
+                case Opcode.IMUL: sp--; stack[sp] = (int) stack[sp] * (int) stack[sp + 1]; break;
+                case Opcode.IDIV: {
+                    int right = (int) stack[sp--];
+                    if (right == 0) {
+                        throw new RuntimeException("Division by zero");
+                    }
+                    stack[sp] = (int) stack[sp] / right;
+                    break;
+                }
+                case Opcode.IADD_D:
+                    sp--;
+                    stack[sp] = Double.doubleToRawLongBits((int) stack[sp] + (int) stack[sp + 1]);
+                    break;
+                case Opcode.DADD: sp--; stack[sp] = bits(real(stack[sp]) + real(stack[sp + 1])); break;
+                case Opcode.DSUB: sp--; stack[sp] = bits(real(stack[sp]) - real(stack[sp + 1])); break;
+                case Opcode.DMUL: sp--; stack[sp] = bits(real(stack[sp]) * real(stack[sp + 1])); break;
+                case Opcode.DDIV: {
+                    double right = real(stack[sp--]);
+                    if (right == 0) {
+                        throw new RuntimeException("Division by zero");
+                    }
+                    stack[sp] = bits(real(stack[sp]) / right);
+                    break;
+                }
+                case Opcode.ILT: sp--; stack[sp] = flag((int) stack[sp] < (int) stack[sp + 1]); break;
+                case Opcode.IGT: sp--; stack[sp] = flag((int) stack[sp] > (int) stack[sp + 1]); break;
+                case Opcode.ILE: sp--; stack[sp] = flag((int) stack[sp] <= (int) stack[sp + 1]); break;
+                case Opcode.IGE: sp--; stack[sp] = flag((int) stack[sp] >= (int) stack[sp + 1]); break;
+                case Opcode.IEQ: sp--; stack[sp] = flag(stack[sp] == stack[sp + 1]); break;
+                case Opcode.INE: sp--; stack[sp] = flag(stack[sp] != stack[sp + 1]); break;
+                case Opcode.DLT: sp--; stack[sp] = flag(real(stack[sp]) < real(stack[sp + 1])); break;
+                case Opcode.DGT: sp--; stack[sp] = flag(real(stack[sp]) > real(stack[sp + 1])); break;
+                case Opcode.DLE: sp--; stack[sp] = flag(real(stack[sp]) <= real(stack[sp + 1])); break;
+                case Opcode.DGE: sp--; stack[sp] = flag(real(stack[sp]) >= real(stack[sp + 1])); break;
+                // Same as Objects.equals on Doubles: NaN equals NaN, 0.0 differs from -0.0.
+                case Opcode.DEQ:
+                    sp--;
+                    stack[sp] = flag(Double.doubleToLongBits(real(stack[sp])) == Double.doubleToLongBits(real(stack[sp + 1])));
+                    break;
+                case Opcode.DNE:
+                    sp--;
+                    stack[sp] = flag(Double.doubleToLongBits(real(stack[sp])) != Double.doubleToLongBits(real(stack[sp + 1])));
+                    break;
+                case Opcode.ZEQ: sp--; stack[sp] = flag(stack[sp] == stack[sp + 1]); break;
+                case Opcode.ZNE: sp--; stack[sp] = flag(stack[sp] != stack[sp + 1]); break;
+                case Opcode.ABINARY:
+                    sp--;
+                    refs[sp] = Interpreter.applyBinary(OPERATORS[code[pc++]], refs[sp], refs[sp + 1]);
+                    refs[sp + 1] = null;
+                    break;
+                case Opcode.ACONDITION:
+                    if (!(refs[sp] instanceof Boolean)) {
+                        throw new RuntimeException("Expected a boolean condition for 'fi'.");
+                    }
+                    stack[sp] = flag((Boolean) refs[sp]);
+                    refs[sp] = null;
+                    break;
+                case Opcode.AITERATIONS:
+                    if (!(refs[sp] instanceof Integer)) {
+                        throw new RuntimeException("Expected an integer for 'rof' iterations.");
+                    }
+                    stack[sp] = (Integer) refs[sp];
+                    refs[sp] = null;
+                    break;
+                case Opcode.PRINT_I: out.println((int) stack[sp--]); break;
+                case Opcode.PRINT_D: out.println(real(stack[sp--])); break;
+                case Opcode.PRINT_Z: out.println(stack[sp--] != 0); break;
+                case Opcode.PRINT_A:
+                    out.println(refs[sp]);
+                    refs[sp--] = null;
+                    break;
+                case Opcode.JUMP: pc = code[pc]; break;
+                case Opcode.JUMP_IF_FALSE:
+                    pc = stack[sp--] == 0 ? code[pc] : pc + 1;
+                    break;
+                case Opcode.JUMP_IF_TRUE_OR_POP:
+                    if (stack[sp] != 0) {
+                        pc = code[pc];
+                    } else {
+                        sp--;
+                        pc++;
+                    }
+                    break;
+                case Opcode.JUMP_IF_FALSE_OR_POP:
+                    if (stack[sp] == 0) {
+                        pc = code[pc];
+                    } else {
+                        sp--;
+                        pc++;
+                    }
+                    break;
+                case Opcode.AJUMP_IF_TRUE:
+                    pc = Boolean.TRUE.equals(refs[sp]) ? code[pc] : pc + 1;
+                    break;
+                case Opcode.AJUMP_IF_FALSE:
+                    pc = Boolean.FALSE.equals(refs[sp]) ? code[pc] : pc + 1;
+                    break;
+                case Opcode.LOOP: {
+                    int counter = code[pc];
+                    if (locals[counter] <= 0) {
+                        pc = code[pc + 1];
+                    } else {
+                        locals[counter]--;
+                        pc += 2;
+                    }
+                    break;
+                }
+                case Opcode.HALT:
+                    return;
+                default:
+                    throw new RuntimeException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+    }
+
+    private static double real(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    private static long flag(boolean value) {
+        return value ? 1 : 0;
+    }
+}
@@ -0,0 +1,58 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes the Interpreter allocates per rof iteration of a numeric loop,
+ * once with the TypeAnalyzer's unboxed paths and once with every value boxed.
+ *
+ * javac -d build *.java bench/AllocationBenchmark.java && java -cp build AllocationBenchmark
+ */
+public class AllocationBenchmark {
+    private static final String PROGRAM =
+            "tni i = 0;\n" +
+            "tni j = 7;\n" +
+            "elbuod x = 0.5;\n" +
+            "elbuod y = 1.25;\n" +
+            "loob b = eslaf;\n" +
+            "rof (N) {\n" +
+            "    tni i = i - 1;\n" +
+            "    tni j = (j * 3) / 2 - i * j;\n" +
+            "    elbuod x = x * y - x / y + i;\n" +
+            "    loob b = (i < j) dna (x >= y);\n" +
+            "}";
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (boolean typed : new boolean[]{true, false}) {
+            // Warm up so the measurement sees compiled code, then take the difference of two loop
+            // lengths so parsing and setup cancel out.
+            for (int i = 0; i < 5; i++) {
+                run(100_000, typed);
+            }
+            long before = threads.getCurrentThreadAllocatedBytes();
+            run(100_000, typed);
+            long small = threads.getCurrentThreadAllocatedBytes() - before;
+            before = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            run(1_100_000, typed);
+            long elapsed = System.nanoTime() - start;
+            long large = threads.getCurrentThreadAllocatedBytes() - before;
+
+            System.out.printf("%-6s %8.2f bytes/iteration %8.1f ns/iteration%n",
+                    typed ? "typed" : "boxed", (large - small) / 1_000_000.0, elapsed / 1_100_000.0);
+        }
+    }
+
+    private static void run(int iterations, boolean typed) {
+        String source = PROGRAM.replace("N", Integer.toString(iterations));
+        BlockNode program = new Parser(new Lexer(source).tokenizeToBuffer()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        ValueType[] slotTypes = new ValueType[resolver.slotNames().size()];
+        java.util.Arrays.fill(slotTypes, ValueType.UNKNOWN);
+        if (typed) {
+            slotTypes = new TypeAnalyzer().analyze(program, slotTypes.length);
+        }
+        new Interpreter(resolver.slotNames(), slotTypes).execute(program);
+    }
+}
@@ -0,0 +1,58 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import benchmarks.ProgramGenerator;
+
+/**
+ * Measures the heap a parsed and resolved program keeps alive and how long it takes to run, as an ASTNode
+ * tree on the Interpreter and as a FlatAst on the FlatInterpreter, for a generated 16MB program.
+ *
+ * javac -d build *.java bench/AstMemoryBenchmark.java bench/benchmarks/ProgramGenerator.java
+ * java -cp build AstMemoryBenchmark
+ */
+public class AstMemoryBenchmark {
+    public static void main(String[] args) {
+        String source = ProgramGenerator.mixed(16L << 20, 42);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        OutputSink out = new OutputSink(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()), OutputSink.FlushPolicy.EXIT);
+        for (boolean flat : new boolean[]{false, true}) {
+            long before = usedAfterGc(memory);
+            Runnable program = flat ? flat(source, out) : tree(source, out);
+            long retained = usedAfterGc(memory) - before;
+
+            // Warm up, then time ten more runs.
+            for (int i = 0; i < 5; i++) {
+                program.run();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                program.run();
+            }
+            long elapsed = (System.nanoTime() - start) / 10;
+
+            System.out.printf("%-4s %8.1f MB retained %8.1f ms/run%n",
+                    flat ? "flat" : "tree", retained / 1048576.0, elapsed / 1e6);
+        }
+    }
+
+    private static Runnable tree(String source, OutputSink out) {
+        BlockNode program = new Parser(new Lexer(source).tokenizeToBuffer()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        ValueType[] slotTypes = new TypeAnalyzer().analyze(program, resolver.slotNames().size());
+        return () -> new Interpreter(resolver.slotNames(), slotTypes, out).execute(program);
+    }
+
+    private static Runnable flat(String source, OutputSink out) {
+        FlatAst program = new Parser(new Lexer(source).tokenizeToBuffer()).parseFlat();
+        program.resolve();
+        return () -> new FlatInterpreter(program, out).execute();
+    }
+
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
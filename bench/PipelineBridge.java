@@ -0,0 +1,46 @@
+import benchmarks.Pipeline;
+
+/** Gives the JMH benchmarks in the benchmarks package access to the compiler's stages. */
+public class PipelineBridge implements Pipeline {
+    @Override
+    public Object lex(String source, boolean regex) {
+        return new Lexer(source, regex ? Lexer.Mode.REGEX : Lexer.Mode.SCANNER).tokenizeToBuffer();
+    }
+
+    @Override
+    public Object parse(Object tokens) {
+        return new Parser((TokenBuffer) tokens).parse();
+    }
+
+    @Override
+    public Object parseFlat(Object tokens) {
+        return new Parser((TokenBuffer) tokens).parseFlat();
+    }
+
+    @Override
+    public Runnable prepare(String source, String backend, boolean optimize) {
+        if (backend.equals("flat")) {
+            if (optimize) {
+                throw new IllegalArgumentException("The flat backend does not run the -O rewrites");
+            }
+            FlatAst flat = new Parser(new Lexer(source).tokenizeToBuffer()).parseFlat();
+            flat.resolve();
+            return () -> new FlatInterpreter(flat, new OutputSink(System.out, OutputSink.FlushPolicy.LINE)).execute();
+        }
+        BlockNode program = new Parser(new Lexer(source).tokenizeToBuffer()).parse();
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        if (optimize) {
+            new Optimizer().optimize(program);
+            new LoopOptimizer(resolver.slotNames()).optimize(program);
+        }
+        ValueType[] slotTypes = new TypeAnalyzer().analyze(program, resolver.slotNames().size());
+        if (backend.equals("interpreter")) {
+            return () -> new Interpreter(resolver.slotNames(), slotTypes).execute(program);
+        } else if (backend.equals("vm")) {
+            Bytecode bytecode = new BytecodeCompiler(resolver.slotNames(), slotTypes).compile(program);
+            return () -> new VirtualMachine().run(bytecode);
+        }
+        throw new IllegalArgumentException("Unknown backend: " + backend);
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses one expression of 100,000 unparenthesized operands: an arithmetic chain or a ro/dna chain. The fork
+ * runs with a 256KB thread stack, so a parser whose recursion grew with the length of a chain would fail
+ * here rather than just be slow. It parses into a FlatAst, since the tree rejects expressions nested more
+ * than 2000 deep and an arithmetic chain is as deep as it is long.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xss256k")
+public class ExpressionBenchmark {
+    private static final int TERMS = 100_000;
+
+    @Param({"arithmetic", "logic"})
+    public String chain;
+
+    private Pipeline pipeline;
+    private Object tokens;
+
+    @Setup
+    public void setup() {
+        pipeline = Pipeline.load();
+        String source = chain.equals("logic")
+                ? ProgramGenerator.logicChain(TERMS, 42)
+                : ProgramGenerator.arithmeticChain(TERMS, 42);
+        tokens = pipeline.lex(source, false);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return pipeline.parseFlat(tokens);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs an arithmetic-heavy and a branch-heavy rof loop of 10,000 iterations on the tree-walking Interpreter,
+ * the bytecode VM and the FlatInterpreter. The front end runs once in setup; each operation executes the program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    private static final int ITERATIONS = 10_000;
+
+    @Param({"interpreter", "vm", "flat"})
+    public String backend;
+
+    private Runnable arithmetic;
+    private Runnable branches;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        Pipeline pipeline = Pipeline.load();
+        arithmetic = pipeline.prepare(ProgramGenerator.arithmeticLoop(ITERATIONS, 12, 42), backend);
+        branches = pipeline.prepare(ProgramGenerator.branchLoop(ITERATIONS, 3, 42), backend);
+        // The programs print their final values; keep that out of the JMH console.
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void restoreOutput() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void arithmeticLoop() {
+        arithmetic.run();
+    }
+
+    @Benchmark
+    public void branchLoop() {
+        branches.run();
+    }
+}
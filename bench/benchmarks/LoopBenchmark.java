@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs 100 x 100 nested rof loops whose inner body is arithmetic on values the outer loop sets, with and
+ * without the -O rewrites, so the gain from hoisting loop-invariant expressions shows per backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopBenchmark {
+    @Param({"interpreter", "vm"})
+    public String backend;
+
+    @Param({"false", "true"})
+    public boolean optimize;
+
+    private Runnable loops;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        loops = Pipeline.load().prepare(ProgramGenerator.nestedLoops(100, 100, 6, 42), backend, optimize);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void restoreOutput() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void nestedLoops() {
+        loops.run();
+    }
+}
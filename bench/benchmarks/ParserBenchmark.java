@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parses 100 declarations whose initializers nest parenthesized operations {@code depth} levels deep. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private Pipeline pipeline;
+    private Object tokens;
+
+    @Setup
+    public void setup() {
+        pipeline = Pipeline.load();
+        tokens = pipeline.lex(ProgramGenerator.nested(depth, 100, 42), false);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return pipeline.parse(tokens);
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+/**
+ * The compiler stages the benchmarks measure. The compiler lives in the unnamed package, which JMH
+ * benchmarks cannot import from, so {@code PipelineBridge} implements this interface on that side
+ * and is loaded by name once per trial.
+ */
+public interface Pipeline {
+    /** Tokenizes the source and returns the TokenBuffer. */
+    Object lex(String source, boolean regex);
+
+    /** Parses a TokenBuffer returned by {@link #lex} and returns the program's BlockNode. */
+    Object parse(Object tokens);
+
+    /** Parses a TokenBuffer returned by {@link #lex} into a FlatAst, which has no limit on expression depth. */
+    Object parseFlat(Object tokens);
+
+    /**
+     * Runs the front end (lex, parse, resolve, type analysis) once and returns a task that executes the
+     * program on the given backend: "interpreter", "vm", or "flat" for the FlatInterpreter, which has no -O.
+     */
+    default Runnable prepare(String source, String backend) {
+        return prepare(source, backend, false);
+    }
+
+    /** As {@link #prepare(String, String)}, with the -O rewrites applied before type analysis if optimize is set. */
+    Runnable prepare(String source, String backend, boolean optimize);
+
+    static Pipeline load() {
+        try {
+            return (Pipeline) Class.forName("PipelineBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load PipelineBridge", e);
+        }
+    }
+}
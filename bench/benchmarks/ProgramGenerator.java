@@ -0,0 +1,419 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates well-typed GoofyAhh programs for the benchmarks. The same kind, size and seed always give the
+ * same program, so results stay comparable between runs and machines.
+ *
+ * java -cp target/benchmarks.jar benchmarks.ProgramGenerator mixed 1MB 42 > program.txt
+ */
+public final class ProgramGenerator {
+    private static final String[] INTS = {"i0", "i1", "i2", "i3"};
+    private static final String[] DOUBLES = {"d0", "d1", "d2"};
+    private static final String[] BOOLEANS = {"b0", "b1"};
+    // nestedLoops: the outer loop updates these, the inner loop only reads them.
+    private static final String[] OUTER_INTS = {"i0", "i3"};
+    private static final String[] OUTER_DOUBLES = {"d0", "d2"};
+
+    private final SplittableRandom random;
+    private final StringBuilder out;
+
+    private ProgramGenerator(long seed, int capacity) {
+        this.random = new SplittableRandom(seed);
+        this.out = new StringBuilder(capacity);
+    }
+
+    /** A program of at least {@code targetBytes} characters mixing every statement kind. */
+    public static String mixed(long targetBytes, long seed) {
+        if (targetBytes > Integer.MAX_VALUE - 4096) {
+            throw new IllegalArgumentException("Program too large: " + targetBytes);
+        }
+        ProgramGenerator generator = new ProgramGenerator(seed, (int) targetBytes + 4096);
+        generator.declarations();
+        generator.out.append("rahc c0 = 'g';\n");
+        while (generator.out.length() < targetBytes) {
+            generator.statement(2);
+        }
+        return generator.finish();
+    }
+
+    /** {@code statements} declarations whose initializers nest {@code depth} parenthesized operations. */
+    public static String nested(int depth, int statements, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, statements * (depth * 8 + 16));
+        for (int s = 0; s < statements; s++) {
+            generator.out.append("tni n").append(s).append(" = ");
+            for (int d = 0; d < depth; d++) {
+                generator.out.append(generator.random.nextInt(1, 100))
+                        .append(generator.random.nextBoolean() ? " - (" : " * (");
+            }
+            generator.out.append(generator.random.nextInt(1, 100));
+            for (int d = 0; d < depth; d++) {
+                generator.out.append(')');
+            }
+            generator.out.append(";\n");
+        }
+        return generator.finish();
+    }
+
+    /** A rof loop of {@code iterations} whose body is {@code statements} typed arithmetic assignments. */
+    public static String arithmeticLoop(int iterations, int statements, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, 1024);
+        generator.declarations();
+        generator.out.append("rof (").append(iterations).append(") {\n");
+        for (int s = 0; s < statements; s++) {
+            generator.out.append("    ");
+            if (s % 3 == 2) {
+                generator.out.append("elbuod ").append(pick(generator.random, DOUBLES)).append(" = ");
+                generator.doubleExpression(3);
+            } else {
+                generator.out.append("tni ").append(INTS[1 + generator.random.nextInt(INTS.length - 1)]).append(" = ");
+                generator.intExpression(3);
+            }
+            generator.out.append(";\n");
+        }
+        generator.out.append("}\n");
+        generator.printAll();
+        return generator.finish();
+    }
+
+    /** A rof loop of {@code iterations} whose body is a tree of fi/esle statements {@code depth} deep. */
+    public static String branchLoop(int iterations, int depth, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, 1024);
+        generator.declarations();
+        generator.out.append("rof (").append(iterations).append(") {\n");
+        generator.out.append("    tni i0 = i0 - 1;\n");
+        generator.branches(depth, "    ");
+        generator.out.append("}\n");
+        generator.printAll();
+        return generator.finish();
+    }
+
+    /**
+     * A rof loop of {@code outer} iterations around one of {@code inner} iterations. The outer body updates
+     * i0, i3, d0 and d2; each of the inner body's {@code statements} assignments combines the variable it
+     * assigns with arithmetic on those, which is the same on every inner iteration.
+     */
+    public static String nestedLoops(int outer, int inner, int statements, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, 2048);
+        generator.declarations();
+        generator.out.append("rof (").append(outer).append(") {\n");
+        generator.out.append("    tni i0 = i0 - 1;\n");
+        generator.out.append("    tni i3 = i0 * 3;\n");
+        generator.out.append("    elbuod d2 = d0 * 0.5;\n");
+        generator.out.append("    elbuod d0 = d2 + i0;\n");
+        generator.out.append("    rof (").append(inner).append(") {\n");
+        for (int s = 0; s < statements; s++) {
+            generator.out.append("        ");
+            if (s % 3 == 2) {
+                generator.out.append("elbuod d1 = (d1 * 0.5) + ");
+                generator.doubleExpression(3, OUTER_DOUBLES, OUTER_INTS);
+            } else {
+                String target = s % 3 == 0 ? "i1" : "i2";
+                generator.out.append("tni ").append(target).append(" = (").append(target).append(" - ");
+                generator.intExpression(3, OUTER_INTS);
+                generator.out.append(") / 2");
+            }
+            generator.out.append(";\n");
+        }
+        generator.out.append("    }\n");
+        generator.out.append("}\n");
+        generator.printAll();
+        return generator.finish();
+    }
+
+    /** An elbuod declaration whose initializer chains {@code terms} ints with +, -, * and /, unparenthesized. */
+    public static String arithmeticChain(int terms, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, terms * 8 + 1024);
+        generator.declarations();
+        generator.out.append("elbuod c0 = ").append(generator.random.nextInt(1, 10));
+        for (int t = 1; t < terms; t++) {
+            switch (generator.random.nextInt(4)) {
+                case 0: generator.out.append(" + "); break;
+                case 1: generator.out.append(" - "); break;
+                case 2: generator.out.append(" * "); break;
+                default: generator.out.append(" / ").append(generator.random.nextInt(1, 10)); continue;
+            }
+            if (generator.random.nextBoolean()) {
+                generator.out.append(generator.random.nextInt(1, 10));
+            } else {
+                generator.out.append(pick(generator.random, INTS));
+            }
+        }
+        generator.out.append(";\nprit(c0);\n");
+        return generator.finish();
+    }
+
+    /** A loob declaration whose initializer chains {@code terms} booleans and comparisons with ro and dna. */
+    public static String logicChain(int terms, long seed) {
+        ProgramGenerator generator = new ProgramGenerator(seed, terms * 12 + 1024);
+        generator.declarations();
+        generator.out.append("loob c0 = ").append(pick(generator.random, BOOLEANS));
+        for (int t = 1; t < terms; t++) {
+            generator.out.append(generator.random.nextInt(4) == 0 ? " dna " : " ro ");
+            if (generator.random.nextBoolean()) {
+                generator.out.append(pick(generator.random, BOOLEANS));
+            } else {
+                generator.out.append('(').append(pick(generator.random, INTS)).append(" < ")
+                        .append(generator.random.nextInt(1, 100)).append(')');
+            }
+        }
+        generator.out.append(";\nprit(c0);\n");
+        return generator.finish();
+    }
+
+    /** Parses sizes such as "512", "64KB" or "100MB". */
+    public static long parseSize(String size) {
+        String upper = size.trim().toUpperCase();
+        if (upper.endsWith("KB")) {
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024;
+        } else if (upper.endsWith("MB")) {
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024 * 1024;
+        }
+        return Long.parseLong(upper);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ProgramGenerator mixed|nested|arithmetic|branch|loops|arithmetic-chain|logic-chain <size|depth|iterations|terms> [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        String program;
+        switch (args[0]) {
+            case "mixed":
+                program = mixed(parseSize(args[1]), seed);
+                break;
+            case "nested":
+                program = nested(Integer.parseInt(args[1]), 100, seed);
+                break;
+            case "arithmetic":
+                program = arithmeticLoop(Integer.parseInt(args[1]), 12, seed);
+                break;
+            case "branch":
+                program = branchLoop(Integer.parseInt(args[1]), 3, seed);
+                break;
+            case "loops":
+                program = nestedLoops(Integer.parseInt(args[1]), 100, 6, seed);
+                break;
+            case "arithmetic-chain":
+                program = arithmeticChain(Integer.parseInt(args[1]), seed);
+                break;
+            case "logic-chain":
+                program = logicChain(Integer.parseInt(args[1]), seed);
+                break;
+            default:
+                System.err.println("Unknown program kind: " + args[0]);
+                return;
+        }
+        System.out.print(program);
+    }
+
+    private void declarations() {
+        for (String name : INTS) {
+            out.append("tni ").append(name).append(" = ").append(random.nextInt(1, 100)).append(";\n");
+        }
+        for (String name : DOUBLES) {
+            out.append("elbuod ").append(name).append(" = ").append(doubleLiteral()).append(";\n");
+        }
+        for (String name : BOOLEANS) {
+            out.append("loob ").append(name).append(" = ").append(random.nextBoolean() ? "eurt" : "eslaf").append(";\n");
+        }
+    }
+
+    private void statement(int depth) {
+        int kind = random.nextInt(depth > 0 ? 7 : 5);
+        switch (kind) {
+            case 0:
+                out.append("tni ").append(pick(random, INTS)).append(" = ");
+                intExpression(3);
+                break;
+            case 1:
+                out.append("elbuod ").append(pick(random, DOUBLES)).append(" = ");
+                doubleExpression(3);
+                break;
+            case 2:
+                out.append("loob ").append(pick(random, BOOLEANS)).append(" = ");
+                booleanExpression(2);
+                break;
+            case 3:
+                out.append("prit(");
+                intExpression(2);
+                out.append(')');
+                break;
+            case 4:
+                out.append("prit(c0)");
+                break;
+            case 5:
+                out.append("fi (");
+                booleanExpression(2);
+                out.append(") {\n");
+                block(depth - 1);
+                out.append("} esle {\n");
+                block(depth - 1);
+                out.append("}\n");
+                return;
+            default:
+                out.append("rof (").append(random.nextInt(1, 4)).append(") {\n");
+                block(depth - 1);
+                out.append("}\n");
+                return;
+        }
+        out.append(";\n");
+    }
+
+    private void block(int depth) {
+        int statements = random.nextInt(1, 4);
+        for (int s = 0; s < statements; s++) {
+            out.append("    ");
+            statement(depth);
+        }
+    }
+
+    private void branches(int depth, String indent) {
+        out.append(indent).append("fi (");
+        int modulus = random.nextInt(2, 7);
+        out.append("(i0 - (i0 / ").append(modulus).append(") * ").append(modulus).append(") ")
+                .append(random.nextBoolean() ? "<" : "==").append(' ').append(random.nextInt(modulus)).append(") {\n");
+        branchBody(depth, indent + "    ");
+        out.append(indent).append("} esle {\n");
+        branchBody(depth, indent + "    ");
+        out.append(indent).append("}\n");
+    }
+
+    private void branchBody(int depth, String indent) {
+        out.append(indent).append("tni ").append(INTS[1 + random.nextInt(INTS.length - 1)]).append(" = ");
+        intExpression(1);
+        out.append(";\n");
+        if (depth > 1) {
+            branches(depth - 1, indent);
+        }
+    }
+
+    // int + int is a double in GoofyAhh, so int expressions only use -, * and division by a non-zero literal.
+    private void intExpression(int depth) {
+        intExpression(depth, INTS);
+    }
+
+    private void intExpression(int depth, String[] ints) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            if (random.nextBoolean()) {
+                out.append(random.nextInt(1, 10));
+            } else {
+                out.append(pick(random, ints));
+            }
+            return;
+        }
+        out.append('(');
+        intExpression(depth - 1, ints);
+        switch (random.nextInt(3)) {
+            case 0:
+                out.append(" - ");
+                intExpression(depth - 1, ints);
+                break;
+            case 1:
+                out.append(" * ");
+                intExpression(depth - 1, ints);
+                break;
+            default:
+                out.append(" / ").append(random.nextInt(1, 10));
+                break;
+        }
+        out.append(')');
+    }
+
+    private void doubleExpression(int depth) {
+        doubleExpression(depth, DOUBLES, INTS);
+    }
+
+    private void doubleExpression(int depth, String[] doubles, String[] ints) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            if (random.nextBoolean()) {
+                out.append(doubleLiteral());
+            } else {
+                out.append(pick(random, doubles));
+            }
+            return;
+        }
+        out.append('(');
+        doubleExpression(depth - 1, doubles, ints);
+        switch (random.nextInt(4)) {
+            case 0:
+                out.append(" + ");
+                intExpression(depth - 1, ints);
+                break;
+            case 1:
+                out.append(" - ");
+                doubleExpression(depth - 1, doubles, ints);
+                break;
+            case 2:
+                out.append(" * ");
+                doubleExpression(depth - 1, doubles, ints);
+                break;
+            default:
+                out.append(" / ").append(doubleLiteral());
+                break;
+        }
+        out.append(')');
+    }
+
+    private void booleanExpression(int depth) {
+        int kind = depth == 0 ? random.nextInt(2) : random.nextInt(5);
+        switch (kind) {
+            case 0:
+                out.append(random.nextBoolean() ? "eurt" : "eslaf");
+                break;
+            case 1:
+                out.append(pick(random, BOOLEANS));
+                break;
+            case 2:
+                out.append('(');
+                intExpression(depth);
+                out.append(random.nextBoolean() ? " < " : " >= ");
+                intExpression(depth);
+                out.append(')');
+                break;
+            case 3:
+                out.append('(');
+                doubleExpression(depth);
+                out.append(random.nextBoolean() ? " > " : " <= ");
+                doubleExpression(depth);
+                out.append(')');
+                break;
+            default:
+                out.append('(');
+                booleanExpression(depth - 1);
+                out.append(random.nextBoolean() ? " dna " : " ro ");
+                booleanExpression(depth - 1);
+                out.append(')');
+                break;
+        }
+    }
+
+    private String doubleLiteral() {
+        return random.nextInt(1, 100) + "." + random.nextInt(1, 10);
+    }
+
+    private void printAll() {
+        for (String name : INTS) {
+            out.append("prit(").append(name).append(");\n");
+        }
+        for (String name : DOUBLES) {
+            out.append("prit(").append(name).append(");\n");
+        }
+    }
+
+    // The lexer rejects trailing whitespace, so programs end right after the last token.
+    private String finish() {
+        int end = out.length();
+        while (end > 0 && Character.isWhitespace(out.charAt(end - 1))) {
+            end--;
+        }
+        out.setLength(end);
+        return out.toString();
+    }
+
+    private static String pick(SplittableRandom random, String[] names) {
+        return names[random.nextInt(names.length)];
+    }
+}
@@ -0,0 +1,53 @@
+package goofyahh;
+
+/**
+ * Entry point for running GoofyAhh from other Java code. compile lexes, parses, resolves and type-checks a
+ * script once; the Program it returns can then be run any number of times, from any number of threads.
+ *
+ * Parameters are variables the caller sets on every run, like ones declared before the first line of the
+ * script.
+ *
+ * The compiler itself is in the unnamed package, which no named package can refer to, so this class loads
+ * its EngineBridge by name once, as the benchmarks load their PipelineBridge.
+ */
+public final class Engine {
+    /** What a Program runs on: the tree-walking Interpreter or the bytecode VirtualMachine. */
+    public enum Backend { INTERPRETER, VM }
+
+    /** Implemented by EngineBridge on the unnamed-package side; not meant for callers. */
+    public interface Compiler {
+        Program compile(String source, Backend backend, boolean optimize, String... parameters);
+    }
+
+    private static final Compiler COMPILER = load();
+
+    private final Backend backend;
+    private final boolean optimize;
+
+    /** An engine that interprets programs without the -O rewrites. */
+    public Engine() {
+        this(Backend.INTERPRETER, false);
+    }
+
+    public Engine(Backend backend, boolean optimize) {
+        this.backend = backend;
+        this.optimize = optimize;
+    }
+
+    /**
+     * Compiles source with the given parameter names, which must be distinct. Compile errors are
+     * RuntimeExceptions carrying the same "Lexing error:", "Parsing error:" or "Resolve error:"
+     * messages the command line prints.
+     */
+    public Program compile(String source, String... parameters) {
+        return COMPILER.compile(source, backend, optimize, parameters);
+    }
+
+    private static Compiler load() {
+        try {
+            return (Compiler) Class.forName("EngineBridge").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load EngineBridge", e);
+        }
+    }
+}
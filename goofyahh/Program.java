@@ -0,0 +1,22 @@
+package goofyahh;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A script compiled by an Engine. It is immutable once compiled: every run gets a fresh frame and its own
+ * output buffer, so one Program can serve many concurrent runs without being parsed again.
+ */
+public interface Program {
+    /** The names given to Engine.compile, in order. */
+    List<String> parameters();
+
+    /**
+     * Runs the program with a value for every parameter and writes prit output to output, flushing it when
+     * the run ends. Values are Integers, Doubles, Booleans or Characters, as tni, elbuod, loob and rahc.
+     * Failures are RuntimeExceptions with the "Runtime error:" message the command line prints and the
+     * original exception as their cause; output written before the failure has been flushed by then.
+     */
+    void run(Map<String, ?> bindings, PrintStream output);
+}
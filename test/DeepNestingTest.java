@@ -0,0 +1,82 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs programs with very deeply nested parentheses through GoofyAhhCompiler --flat on a thread with a small
+ * stack, and checks they print their value instead of overflowing it. Exits with status 1 on a failure.
+ *
+ * javac -d build *.java goofyahh/*.java test/DeepNestingTest.java
+ * java -cp build DeepNestingTest
+ */
+public class DeepNestingTest {
+    private static final int DEPTH = 100_000;
+    private static final long STACK_SIZE = 256 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int failures = 0;
+        failures += check("parentheses around a literal", "(".repeat(DEPTH) + "1" + ")".repeat(DEPTH), "1");
+        failures += check("right operands in parentheses", "1 + (".repeat(DEPTH) + "1" + ")".repeat(DEPTH),
+                (DEPTH + 1) + ".0");
+        failures += check("left operands in parentheses", "(".repeat(DEPTH) + "1" + " + 1)".repeat(DEPTH),
+                (DEPTH + 1) + ".0");
+        // The ) of prit closes the innermost one, so the error is at the ;.
+        failures += check("unclosed parentheses", "(".repeat(DEPTH) + "1",
+                "Parsing error: Expected ')' after expression. (line 1, column " + (DEPTH + 8) + ")");
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("DeepNestingTest: all passed");
+    }
+
+    private static int check(String name, String expression, String expected) throws Exception {
+        Path file = Files.createTempFile("deep", ".txt");
+        Files.writeString(file, "prit(" + expression + ");");
+        String output;
+        try {
+            output = runFlat(file);
+        } finally {
+            Files.delete(file);
+        }
+        if (!output.equals(expected)) {
+            System.out.println("FAIL " + name + ": expected " + expected + " but got "
+                    + (output.length() > 200 ? output.substring(0, 200) + "..." : output));
+            return 1;
+        }
+        System.out.println("ok   " + name);
+        return 0;
+    }
+
+    // Everything the compiler prints, to either stream, on a thread whose stack is far too small to recurse
+    // once per level of nesting.
+    private static String runFlat(Path file) throws InterruptedException {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream capture = new PrintStream(captured, true, StandardCharsets.UTF_8);
+        Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                GoofyAhhCompiler.main(new String[]{"--flat", file.toString()});
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        }, "deep-nesting", STACK_SIZE);
+        System.setOut(capture);
+        System.setErr(capture);
+        try {
+            thread.start();
+            thread.join();
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        if (thrown[0] != null) {
+            return thrown[0].toString();
+        }
+        return new String(captured.toByteArray(), StandardCharsets.UTF_8).strip();
+    }
+}